@@ -0,0 +1,83 @@
+package ru.vicsergeev.GetwayUserService.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Diffs two result files of the same kind and exits with 1 when anything got
+ * worse by more than the tolerance, so it can gate a CI job:
+ *
+ *   JMH:  java -jar benchmarks.jar -rf json -rff current.json
+ *   e2e:  EndToEndBenchmark out=current.json
+ *   java -cp benchmarks.jar ...benchmarks.BenchmarkCompare baseline.json current.json [tolerancePercent=10]
+ *
+ * JMH scores in x/op are lower-is-better, ops/x higher-is-better; for e2e runs
+ * rps is compared higher-is-better and p99 / p999 lower-is-better.
+ */
+
+public class BenchmarkCompare {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BenchmarkCompare <baseline.json> <current.json> [tolerancePercent]");
+            System.exit(2);
+        }
+        double tolerance = (args.length > 2 ? Double.parseDouble(args[2]) : 10) / 100;
+        Map<String, Metric> baseline = read(new File(args[0]));
+        Map<String, Metric> current = read(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, Metric> entry : current.entrySet()) {
+            Metric before = baseline.get(entry.getKey());
+            Metric after = entry.getValue();
+            if (before == null || before.value() == 0) {
+                System.out.printf("%-70s %12.3f %s (new)%n", entry.getKey(), after.value(), after.unit());
+                continue;
+            }
+            double change = (after.value() - before.value()) / before.value();
+            double worse = after.lowerIsBetter() ? change : -change;
+            boolean regression = worse > tolerance;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-70s %12.3f -> %12.3f %-8s %+7.1f%%%s%n", entry.getKey(), before.value(), after.value(),
+                    after.unit(), change * 100, regression ? "  REGRESSION" : "");
+        }
+        System.out.printf("%d regression(s) beyond %.0f%%%n", regressions, tolerance * 100);
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    // benchmark name (with params) -> metric, for either file format
+    static Map<String, Metric> read(File file) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(file);
+        Map<String, Metric> metrics = new LinkedHashMap<>();
+        if (root.isArray()) {
+            for (JsonNode run : root) {
+                StringBuilder name = new StringBuilder(run.path("benchmark").asText());
+                for (Map.Entry<String, JsonNode> param : run.path("params").properties()) {
+                    name.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+                }
+                name.append(" threads=").append(run.path("threads").asText());
+                JsonNode primary = run.path("primaryMetric");
+                String unit = primary.path("scoreUnit").asText();
+                metrics.put(name.toString(), new Metric(primary.path("score").asDouble(), unit, unit.endsWith("/op")));
+            }
+        } else {
+            for (JsonNode result : root.path("results")) {
+                String name = result.path("name").asText();
+                metrics.put(name + " rps", new Metric(result.path("rps").asDouble(), "req/s", false));
+                metrics.put(name + " p99", new Metric(result.path("p99Ms").asDouble(), "ms", true));
+                metrics.put(name + " p999", new Metric(result.path("p999Ms").asDouble(), "ms", true));
+            }
+        }
+        return metrics;
+    }
+
+    record Metric(double value, String unit, boolean lowerIsBetter) {
+    }
+}
@@ -0,0 +1,64 @@
+package ru.vicsergeev.GetwayUserService.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.vicsergeev.GetwayUserService.services.BufferPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation per proxied request, buffered vs streaming body forwarding.
+ * Run with -prof gc and compare gc.alloc.rate.norm (bytes per op).
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BodyForwardingBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    private int payloadSize;
+
+    private ByteArrayInputStream clientBody;
+    private ByteArrayInputStream upstreamBody;
+    private final OutputStream sink = OutputStream.nullOutputStream();
+    private final BufferPool bufferPool = new BufferPool(8192, 16);
+
+    @Setup
+    public void setUp() {
+        byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'a');
+        clientBody = new ByteArrayInputStream(payload);
+        upstreamBody = new ByteArrayInputStream(payload);
+    }
+
+    // what the gateway did before: body -> byte[] -> String -> byte[] upstream,
+    // upstream response -> String -> byte[] to client
+    @Benchmark
+    public long buffered() throws IOException {
+        clientBody.reset();
+        upstreamBody.reset();
+        byte[] body = clientBody.readAllBytes();
+        String payload = new String(body, StandardCharsets.UTF_8);
+        sink.write(payload.getBytes(StandardCharsets.UTF_8));
+
+        String upstream = new String(upstreamBody.readAllBytes(), StandardCharsets.UTF_8);
+        byte[] out = upstream.getBytes(StandardCharsets.UTF_8);
+        sink.write(out);
+        return body.length + out.length;
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        clientBody.reset();
+        upstreamBody.reset();
+        return bufferPool.transfer(clientBody, sink) + bufferPool.transfer(upstreamBody, sink);
+    }
+}
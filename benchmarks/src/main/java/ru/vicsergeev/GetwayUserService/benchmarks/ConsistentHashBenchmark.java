@@ -0,0 +1,56 @@
+package ru.vicsergeev.GetwayUserService.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+import ru.vicsergeev.GetwayUserService.services.balancer.ConsistentHashLoadBalancer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// ConsistentHashLoadBalancer.choose per request over 10 instances with 160 virtual nodes each:
+// unbounded is the ring lookup alone, bounded adds the in-flight sum and the walk past loaded instances.
+// Keys are prebuilt, so -prof gc should show no allocation once the ring is built.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsistentHashBenchmark {
+
+    private static final int KEYS = 100_000;
+
+    private ServiceInstance[] instances;
+    private ConsistentHashLoadBalancer unbounded;
+    private ConsistentHashLoadBalancer bounded;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        instances = new ServiceInstance[10];
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = new ServiceInstance("users", "http://10.0.0." + i + ":8080");
+            // some load, so the bounded walk has something to compare
+            for (int j = 0; j < i; j++) {
+                instances[i].onRequestStart();
+            }
+        }
+        unbounded = new ConsistentHashLoadBalancer(160, 0);
+        bounded = new ConsistentHashLoadBalancer(160, 1.25);
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = String.valueOf(i);
+        }
+    }
+
+    @Benchmark
+    public ServiceInstance unbounded() {
+        return unbounded.choose(instances, keys[ThreadLocalRandom.current().nextInt(KEYS)]);
+    }
+
+    @Benchmark
+    public ServiceInstance bounded() {
+        return bounded.choose(instances, keys[ThreadLocalRandom.current().nextInt(KEYS)]);
+    }
+}
@@ -0,0 +1,122 @@
+package ru.vicsergeev.GetwayUserService.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.vicsergeev.GetwayUserService.GetwayUserServiceApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * End-to-end run in one JVM: stub user and notification services, the gateway
+ * started in-process against them (caching and coalescing off, so every request
+ * reaches a stub), and the closed-loop LoadGenerator stepping through the
+ * concurrency levels for both routes. Results go to stdout and to a JSON file
+ * BenchmarkCompare can diff against an earlier run.
+ *
+ *   java -cp benchmarks.jar ...benchmarks.EndToEndBenchmark latency=20 errorRate=0.01 payload=2048 \
+ *        levels=50,200,800 duration=20 mode=buffered out=e2e-results.json
+ */
+
+public class EndToEndBenchmark {
+
+    private static final int USER_PORT = 18080;
+    private static final int NOTIFICATION_PORT = 18091;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>(Map.of(
+                "latency", "20", "errorRate", "0", "payload", "512", "levels", "50,200",
+                "duration", "15", "mode", "buffered", "out", "e2e-results.json"));
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !options.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("unknown option " + arg + ", known: " + options.keySet());
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        long latency = Long.parseLong(options.get("latency"));
+        double errorRate = Double.parseDouble(options.get("errorRate"));
+        int payload = Integer.parseInt(options.get("payload"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.get("duration")));
+
+        StubUpstream users = new StubUpstream(USER_PORT, latency, errorRate, payload);
+        StubUpstream notifications = new StubUpstream(NOTIFICATION_PORT, latency, errorRate, payload);
+        users.start();
+        notifications.start();
+        ConfigurableApplicationContext gateway = startGateway(options.get("mode"));
+        try {
+            int port = Integer.parseInt(gateway.getEnvironment().getProperty("local.server.port"));
+            LoadGenerator generator = new LoadGenerator();
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (String target : List.of("/users/1", "/notifications/1")) {
+                URI uri = URI.create("http://localhost:" + port + target);
+                // short warm-up so JIT and connection pools do not land in the first step
+                generator.run(uri, 16, Duration.ofSeconds(3));
+                for (String level : options.get("levels").split(",")) {
+                    LoadGenerator.StepResult step = generator.run(uri, Integer.parseInt(level.trim()), duration);
+                    System.out.println(target + " " + step);
+                    results.add(toJson(target, step));
+                }
+            }
+            write(new File(options.get("out")), options, results);
+        } finally {
+            gateway.close();
+            users.stop();
+            notifications.stop();
+        }
+    }
+
+    // passed as command line args, default properties would lose to application.yml
+    private static ConfigurableApplicationContext startGateway(String mode) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                // none of the dev/docker/prod overrides
+                "--spring.profiles.active=benchmark",
+                "--logging.level.root=WARN"));
+        for (String[] backend : new String[][]{{"user", String.valueOf(USER_PORT)}, {"notification", String.valueOf(NOTIFICATION_PORT)}}) {
+            String prefix = "--services.backends." + backend[0] + ".";
+            args.add(prefix + "instances[0]=http://localhost:" + backend[1]);
+            args.add(prefix + "health-check-path=" + StubUpstream.HEALTH_PATH);
+            args.add(prefix + "mode=" + mode);
+            args.add(prefix + "cache.enabled=false");
+            args.add(prefix + "coalescing.enabled=false");
+        }
+        return new SpringApplicationBuilder(GetwayUserServiceApplication.class).run(args.toArray(String[]::new));
+    }
+
+    private static Map<String, Object> toJson(String target, LoadGenerator.StepResult step) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", target + "@" + step.concurrency());
+        result.put("target", target);
+        result.put("concurrency", step.concurrency());
+        result.put("requests", step.requests());
+        result.put("errors", step.errors());
+        result.put("rps", step.throughput());
+        result.put("p50Ms", step.p50Nanos() / 1e6);
+        result.put("p99Ms", step.p99Nanos() / 1e6);
+        result.put("p999Ms", step.p999Nanos() / 1e6);
+        result.put("maxMs", step.maxNanos() / 1e6);
+        return result;
+    }
+
+    private static void write(File out, Map<String, String> options, List<Map<String, Object>> results) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("suite", "e2e");
+        report.put("timestamp", Instant.now().toString());
+        report.put("java", System.getProperty("java.version"));
+        report.put("cpus", Runtime.getRuntime().availableProcessors());
+        report.put("options", options);
+        report.put("results", results);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out, report);
+        System.out.println("results written to " + out.getAbsolutePath());
+    }
+}
@@ -0,0 +1,116 @@
+package ru.vicsergeev.GetwayUserService.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.observability.UpstreamMetrics;
+import ru.vicsergeev.GetwayUserService.services.ServiceDiscoveryManager;
+import ru.vicsergeev.GetwayUserService.services.discovery.DiscoverySource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ServiceDiscoveryManager.getNextInstance against the previous
+ * stream-and-collect implementation, at 1, 8 and 64 threads.
+ * Run with -prof gc to see the per-call allocation go away.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InstanceSelectionBenchmark {
+
+    private static final List<String> INSTANCES = List.of(
+            "http://user-service-1:8080", "http://user-service-2:8080",
+            "http://user-service-3:8080", "http://user-service-4:8080");
+
+    private ServiceDiscoveryManager discovery;
+    private ThreadPoolTaskScheduler scheduler;
+    private LegacyRoundRobin legacy;
+
+    @Setup
+    public void setUp() {
+        ServicesProperties properties = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        user.setInstances(INSTANCES);
+        properties.getBackends().put("user", user);
+        // no discovery sources, the scheduler only runs the drain sweep
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        discovery = new ServiceDiscoveryManager(properties,
+                new StaticListableBeanFactory().getBeanProvider(DiscoverySource.class), scheduler,
+                new UpstreamMetrics(new SimpleMeterRegistry()));
+        discovery.init();
+        legacy = new LegacyRoundRobin(INSTANCES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String snapshot_1() {
+        return discovery.getNextInstance("user");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String snapshot_8() {
+        return discovery.getNextInstance("user");
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String snapshot_64() {
+        return discovery.getNextInstance("user");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String legacy_1() {
+        return legacy.getNextInstance();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String legacy_8() {
+        return legacy.getNextInstance();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String legacy_64() {
+        return legacy.getNextInstance();
+    }
+
+    // selection as it was before the snapshot rewrite
+    static final class LegacyRoundRobin {
+        private final Map<String, Boolean> instances = new ConcurrentHashMap<>();
+        private final AtomicInteger index = new AtomicInteger(0);
+
+        LegacyRoundRobin(List<String> urls) {
+            urls.forEach(url -> instances.put(url, true));
+        }
+
+        String getNextInstance() {
+            List<String> availableInstances = instances.entrySet().stream()
+                    .filter(Map.Entry::getValue)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            int currentIndex = index.getAndIncrement() % availableInstances.size();
+            return availableInstances.get(currentIndex);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package ru.vicsergeev.GetwayUserService.benchmarks;
+
+import ru.vicsergeev.GetwayUserService.config.LoadBalancerType;
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+import ru.vicsergeev.GetwayUserService.services.balancer.LoadBalancer;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Discrete-event simulation of the load balancers against a pool where one
+ * instance is much slower than its peers (GC pauses, smaller hardware).
+ * Runs the real LoadBalancer implementations on virtual time and prints
+ * latency percentiles per strategy.
+ *
+ * usage: LoadBalancerSimulation [instances] [slowFactor] [utilization] [requests]
+ */
+
+public class LoadBalancerSimulation {
+
+    // concurrent requests an instance serves, the rest queue up
+    private static final int WORKERS_PER_INSTANCE = 8;
+    private static final double MEAN_SERVICE_MS = 10.0;
+
+    public static void main(String[] args) {
+        int instanceCount = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        double slowFactor = args.length > 1 ? Double.parseDouble(args[1]) : 10.0;
+        double utilization = args.length > 2 ? Double.parseDouble(args[2]) : 0.7;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 500_000;
+
+        System.out.printf("%d instances, one %.0fx slower, %.0f%% utilization, %d requests%n",
+                instanceCount, slowFactor, utilization * 100, requests);
+        for (LoadBalancerType type : LoadBalancerType.values()) {
+            long[] latencies = simulate(LoadBalancer.create(type), instanceCount, slowFactor, utilization, requests);
+            Arrays.sort(latencies);
+            System.out.printf("%-16s p50=%7.1fms p99=%7.1fms p999=%7.1fms max=%8.1fms%n", type,
+                    LoadGenerator.percentile(latencies, 0.50) / 1e6,
+                    LoadGenerator.percentile(latencies, 0.99) / 1e6,
+                    LoadGenerator.percentile(latencies, 0.999) / 1e6,
+                    latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    static long[] simulate(LoadBalancer balancer, int instanceCount, double slowFactor,
+                           double utilization, int requests) {
+        Random random = new Random(42);
+        ServiceInstance[] instances = new ServiceInstance[instanceCount];
+        SimulatedServer[] servers = new SimulatedServer[instanceCount];
+        double capacityPerMs = 0;
+        for (int i = 0; i < instanceCount; i++) {
+            instances[i] = new ServiceInstance("sim", "http://instance-" + i);
+            double meanServiceMs = i == 0 ? MEAN_SERVICE_MS * slowFactor : MEAN_SERVICE_MS;
+            servers[i] = new SimulatedServer(meanServiceMs);
+            capacityPerMs += WORKERS_PER_INSTANCE / meanServiceMs;
+        }
+        double meanInterArrivalMs = 1.0 / (capacityPerMs * utilization);
+
+        PriorityQueue<Completion> completions = new PriorityQueue<>();
+        long[] latencies = new long[requests];
+        double now = 0;
+        for (int r = 0; r < requests; r++) {
+            now += exponential(random, meanInterArrivalMs);
+            // everything finished before this arrival is visible to the balancer
+            while (!completions.isEmpty() && completions.peek().timeMs <= now) {
+                Completion done = completions.poll();
+                done.instance.onRequestEnd(done.latencyNanos);
+            }
+            ServiceInstance chosen = balancer.choose(instances);
+            int index = indexOf(instances, chosen);
+            chosen.onRequestStart();
+            double finishMs = servers[index].schedule(now, random);
+            long latencyNanos = (long) ((finishMs - now) * 1_000_000);
+            latencies[r] = latencyNanos;
+            completions.add(new Completion(finishMs, chosen, latencyNanos));
+        }
+        return latencies;
+    }
+
+    private static int indexOf(ServiceInstance[] instances, ServiceInstance instance) {
+        for (int i = 0; i < instances.length; i++) {
+            if (instances[i] == instance) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("balancer returned unknown instance");
+    }
+
+    private static double exponential(Random random, double mean) {
+        return -Math.log(1.0 - random.nextDouble()) * mean;
+    }
+
+    // FIFO queue in front of a fixed number of workers
+    private static final class SimulatedServer {
+        private final double meanServiceMs;
+        private final double[] workerFreeAt = new double[WORKERS_PER_INSTANCE];
+
+        private SimulatedServer(double meanServiceMs) {
+            this.meanServiceMs = meanServiceMs;
+        }
+
+        private double schedule(double arrivalMs, Random random) {
+            int worker = 0;
+            for (int i = 1; i < workerFreeAt.length; i++) {
+                if (workerFreeAt[i] < workerFreeAt[worker]) {
+                    worker = i;
+                }
+            }
+            double start = Math.max(arrivalMs, workerFreeAt[worker]);
+            double finish = start + exponential(random, meanServiceMs);
+            workerFreeAt[worker] = finish;
+            return finish;
+        }
+    }
+
+    private record Completion(double timeMs, ServiceInstance instance, long latencyNanos)
+            implements Comparable<Completion> {
+
+        @Override
+        public int compareTo(Completion other) {
+            return Double.compare(timeMs, other.timeMs);
+        }
+    }
+}
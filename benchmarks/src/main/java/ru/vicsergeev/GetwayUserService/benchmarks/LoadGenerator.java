@@ -0,0 +1,130 @@
+package ru.vicsergeev.GetwayUserService.benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load generator: N concurrent clients each send the next request
+ * as soon as the previous one completes. Runs one step per concurrency level
+ * and prints throughput, error count and latency percentiles, so platform and
+ * virtual thread modes can be compared against the same slow upstream:
+ *
+ *   java -cp benchmarks.jar ...benchmarks.StubUpstream 8080 200
+ *   GATEWAY_VIRTUAL_THREADS=false java -jar gateway.jar   (then =true)
+ *   java -cp benchmarks.jar ...benchmarks.LoadGenerator http://localhost:8085/users/1 100,400,1000,2000 20
+ *
+ * The highest level with no errors and a flat p99 is the max concurrency
+ * a gateway node holds in that mode.
+ */
+
+public class LoadGenerator {
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    public StepResult run(URI target, int concurrency, Duration duration) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicLong errors = new AtomicLong();
+        List<Worker> workers = new ArrayList<>(concurrency);
+        List<CompletableFuture<Void>> loops = new ArrayList<>(concurrency);
+        long started = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            Worker worker = new Worker(target, deadline, errors);
+            workers.add(worker);
+            loops.add(worker.done);
+            worker.next();
+        }
+        CompletableFuture.allOf(loops.toArray(CompletableFuture[]::new)).join();
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+
+        int total = workers.stream().mapToInt(w -> w.count).sum();
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            offset += worker.count;
+        }
+        Arrays.sort(latencies);
+        return new StepResult(concurrency, total, errors.get(), total / elapsedSeconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                latencies.length > 0 ? latencies[latencies.length - 1] : 0);
+    }
+
+    static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    // one client; requests of a worker are sequential so its latency array needs no locking
+    private final class Worker {
+        private final HttpRequest request;
+        private final long deadline;
+        private final AtomicLong errors;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private long[] latencies = new long[1024];
+        private int count;
+
+        private Worker(URI target, long deadline, AtomicLong errors) {
+            this.request = HttpRequest.newBuilder(target).timeout(Duration.ofSeconds(30)).GET().build();
+            this.deadline = deadline;
+            this.errors = errors;
+        }
+
+        private void next() {
+            if (System.nanoTime() >= deadline) {
+                done.complete(null);
+                return;
+            }
+            long start = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        record(System.nanoTime() - start);
+                        if (failure != null || response.statusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                        next();
+                    });
+        }
+
+        private void record(long latencyNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+    }
+
+    public record StepResult(int concurrency, int requests, long errors, double throughput,
+                             long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+
+        @Override
+        public String toString() {
+            return String.format("concurrency=%-6d requests=%-8d errors=%-6d rps=%-10.1f p50=%.1fms p99=%.1fms p999=%.1fms max=%.1fms",
+                    concurrency, requests, errors, throughput,
+                    p50Nanos / 1e6, p99Nanos / 1e6, p999Nanos / 1e6, maxNanos / 1e6);
+        }
+    }
+
+    public static void main(String[] args) {
+        URI target = URI.create(args.length > 0 ? args[0] : "http://localhost:8085/users/1");
+        String[] levels = (args.length > 1 ? args[1] : "100,400,1000,2000").split(",");
+        Duration duration = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 20);
+
+        LoadGenerator generator = new LoadGenerator();
+        for (String level : levels) {
+            System.out.println(generator.run(target, Integer.parseInt(level.trim()), duration));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ru.vicsergeev.GetwayUserService.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.services.ratelimit.InMemoryRateLimitStore;
+import ru.vicsergeev.GetwayUserService.services.ratelimit.RateLimitPolicy;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InMemoryRateLimitStore.tryAcquire per request, at 1, 8 and 64 threads:
+ * hotKey has every thread hammering the same client (worst case CAS contention),
+ * spread picks one of a million clients per call (map lookups, cache misses).
+ * The budget is well under 10us/op; run with -prof gc to check existing keys do not allocate.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimitBenchmark {
+
+    private static final int KEYS = 1_000_000;
+
+    private InMemoryRateLimitStore store;
+    private RateLimitPolicy policy;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        ServicesProperties.RateLimitProps props = new ServicesProperties.RateLimitProps();
+        props.setEnabled(true);
+        props.setRequestsPerSecond(1000);
+        props.setKey("header:X-Api-Key");
+        policy = RateLimitPolicy.of("users", props);
+        store = new InMemoryRateLimitStore(2 * KEYS);
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "client-" + i;
+            store.tryAcquire("users", keys[i], policy);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long hotKey_1() {
+        return store.tryAcquire("users", "client-0", policy);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long hotKey_8() {
+        return store.tryAcquire("users", "client-0", policy);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public long hotKey_64() {
+        return store.tryAcquire("users", "client-0", policy);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long spread_1() {
+        return store.tryAcquire("users", keys[ThreadLocalRandom.current().nextInt(KEYS)], policy);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long spread_8() {
+        return store.tryAcquire("users", keys[ThreadLocalRandom.current().nextInt(KEYS)], policy);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public long spread_64() {
+        return store.tryAcquire("users", keys[ThreadLocalRandom.current().nextInt(KEYS)], policy);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.vicsergeev.GetwayUserService.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.observability.UpstreamMetrics;
+import ru.vicsergeev.GetwayUserService.routing.Route;
+import ru.vicsergeev.GetwayUserService.routing.RouteTable;
+import ru.vicsergeev.GetwayUserService.services.UpstreamClients;
+import ru.vicsergeev.GetwayUserService.services.UpstreamRequests;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per request path handling: route lookup plus upstream path rewrite (what
+ * extractPathAfterPrefix did before the route table) and query string building,
+ * against a table of a dozen routes.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private static final List<String> PREFIXES = List.of(
+            "/users", "/users/admin", "/notifications", "/notifications/push", "/orders", "/orders/history",
+            "/payments", "/payments/refunds", "/catalog", "/catalog/search", "/profile", "/api/v2/users");
+
+    @Param({"/users/42", "/notifications/push/7/read", "/api/v2/users/42/settings", "/unknown/path"})
+    private String path;
+
+    private UpstreamClients upstreamClients;
+    private RouteTable routeTable;
+    private MockHttpServletRequest withQuery;
+    private MockHttpServletRequest withoutQuery;
+
+    @Setup
+    public void setUp() {
+        ServicesProperties properties = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        user.setInstances(List.of("http://user-service-1:8080"));
+        properties.getBackends().put("user", user);
+        for (String prefix : PREFIXES) {
+            ServicesProperties.RouteProps route = new ServicesProperties.RouteProps();
+            route.setId(prefix.substring(1).replace('/', '-'));
+            route.setPrefix(prefix);
+            route.setService("user");
+            properties.getRoutes().add(route);
+        }
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        upstreamClients = new UpstreamClients(properties, new StandardEnvironment(), registry, new UpstreamMetrics(registry));
+        upstreamClients.init();
+        routeTable = new RouteTable(properties, upstreamClients);
+        routeTable.init();
+
+        withQuery = new MockHttpServletRequest("GET", path);
+        withQuery.setQueryString("page=2&size=50&sort=name,asc");
+        withoutQuery = new MockHttpServletRequest("GET", path);
+    }
+
+    @TearDown
+    public void tearDown() {
+        upstreamClients.shutdown();
+    }
+
+    @Benchmark
+    public String matchAndRewrite() {
+        Route route = routeTable.match(path, 0);
+        return route != null ? route.upstreamPath(path, 0) : null;
+    }
+
+    @Benchmark
+    public String queryString() {
+        return UpstreamRequests.queryString(withQuery);
+    }
+
+    @Benchmark
+    public String noQueryString() {
+        return UpstreamRequests.queryString(withoutQuery);
+    }
+}
@@ -0,0 +1,90 @@
+package ru.vicsergeev.GetwayUserService.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Upstream stand-in answering every request after a fixed delay, used to
+ * keep many gateway calls in flight at once. Optionally answers a share of
+ * requests with 500 and pads the JSON body to a given size.
+ *
+ * usage: StubUpstream <port> <latencyMs> [errorRate 0..1] [payloadBytes]
+ */
+
+public class StubUpstream {
+
+    static final String HEALTH_PATH = "/health";
+
+    private final HttpServer server;
+
+    public StubUpstream(int port, long latencyMs) throws IOException {
+        this(port, latencyMs, 0, 0);
+    }
+
+    public StubUpstream(int port, long latencyMs, double errorRate, int payloadBytes) throws IOException {
+        byte[] payload = payload(payloadBytes);
+        byte[] error = "{\"error\":\"stub failure\"}".getBytes(StandardCharsets.UTF_8);
+        // without it delayed ACKs add ~40ms on top of the configured latency
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        // the default keeps 200 idle keep-alive connections and closes the rest, a gateway pool larger than
+        // that then reuses closed connections and fails with NoHttpResponseException
+        System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+        server = HttpServer.create(new InetSocketAddress(port), 4096);
+        // thread per request, the stub itself must never be the bottleneck
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getRequestBody().readAllBytes();
+            // health checks always pass, the error rate is for traffic only
+            boolean fail = errorRate > 0 && !exchange.getRequestURI().getPath().equals(HEALTH_PATH)
+                    && ThreadLocalRandom.current().nextDouble() < errorRate;
+            byte[] body = fail ? error : payload;
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(fail ? 500 : 200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+    }
+
+    // the default small user document, or one padded with a filler field to the given size
+    private static byte[] payload(int payloadBytes) {
+        String document = "{\"id\":1,\"name\":\"stub\"}";
+        int padding = payloadBytes - document.length() - ",\"filler\":\"\"".length();
+        if (padding <= 0) {
+            return document.getBytes(StandardCharsets.UTF_8);
+        }
+        char[] filler = new char[padding];
+        Arrays.fill(filler, 'x');
+        return ("{\"id\":1,\"name\":\"stub\",\"filler\":\"" + new String(filler) + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        long latencyMs = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        double errorRate = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        int payloadBytes = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        new StubUpstream(port, latencyMs, errorRate, payloadBytes).start();
+        System.out.printf("stub upstream on :%d, latency %d ms, error rate %.3f, payload %d bytes%n",
+                port, latencyMs, errorRate, payloadBytes);
+    }
+}
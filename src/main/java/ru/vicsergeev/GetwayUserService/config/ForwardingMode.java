@@ -0,0 +1,10 @@
+package ru.vicsergeev.GetwayUserService.config;
+
+public enum ForwardingMode {
+    // body read into memory, upstream response buffered as String
+    BUFFERED,
+    // request/response bodies piped through pooled fixed-size buffers
+    STREAMING,
+    // non-blocking upstream call, servlet thread released until the response arrives
+    ASYNC
+}
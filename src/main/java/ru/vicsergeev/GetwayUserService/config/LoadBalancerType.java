@@ -0,0 +1,13 @@
+package ru.vicsergeev.GetwayUserService.config;
+
+public enum LoadBalancerType {
+    ROUND_ROBIN,
+    // fewest in-flight requests among all healthy instances
+    LEAST_REQUESTS,
+    // fewer in-flight requests of two random instances
+    POWER_OF_TWO,
+    // two random instances, lower latency average x (in-flight + 1) wins
+    EWMA,
+    // same hash key, same instance (e.g. per user id), with bounded load
+    CONSISTENT_HASH
+}
@@ -1,11 +1,17 @@
 package ru.vicsergeev.GetwayUserService.config;
 
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Victor 31.10.2025
@@ -14,8 +20,150 @@ import java.util.List;
 @Getter
 @ConfigurationProperties(prefix = "services")
 public class ServicesProperties {
-    private final ServiceProps user = new ServiceProps();
-    private final ServiceProps notification = new ServiceProps();
+    private static final Logger log = LoggerFactory.getLogger(ServicesProperties.class);
+    // routes of the fixed gateway, by service
+    private static final Map<String, String> LEGACY_PREFIXES = Map.of("user", "/users", "notification", "/notifications");
+
+    // upstream services by name, referenced from routes
+    private final Map<String, ServiceProps> backends = new LinkedHashMap<>();
+    private final List<RouteProps> routes = new ArrayList<>();
+    // services.user / services.notification of the fixed /users and /notifications gateway, see init()
+    @Getter(AccessLevel.NONE)
+    private final Map<String, ServiceProps> legacy = new LinkedHashMap<>();
+    // buffers used by streaming mode, heap per in-flight request is one buffer per direction
+    @Setter
+    private int streamBufferSize = 8192;
+    @Setter
+    private int streamBufferPoolSize = 256;
+    // shared by all services with caching enabled, bytes of cached bodies and headers;
+    // split evenly over the cache's 16 lock stripes, so keep it well above 16 x max-entry-size
+    @Setter
+    private long responseCacheMaxBytes = 64L * 1024 * 1024;
+    // client keys the in-memory rate limit store holds over all routes, new keys get 429 past it until
+    // idle ones are swept; watch gateway.ratelimit.overflows
+    @Setter
+    private int rateLimitMaxKeys = 1_000_000;
+    // how often keys with a refilled bucket are dropped, ms
+    @Setter
+    private long rateLimitSweepInterval = 60000;
+    // share of requests written to the gateway.access log, 5xx are always written
+    @Setter
+    private double accessLogSampleRate = 0.01;
+    // entries waiting for the access log writer, more are dropped
+    @Setter
+    private int accessLogQueueSize = 8192;
+    // X-Forwarded-* and Forwarded on upstream requests, routes can turn it off
+    @Setter
+    private boolean forwardedHeaders = true;
+    // addresses or CIDRs (10.0.0.0/8, fd00::/8) of the load balancers in front of the gateway; X-Forwarded-*
+    // and Forwarded are only extended for requests from them, anyone else gets theirs replaced. Empty trusts no one
+    private final List<String> trustedProxies = new ArrayList<>();
+
+    private final DiscoveryProps discovery = new DiscoveryProps();
+
+    /**
+     * @deprecated use services.backends.user
+     */
+    @Deprecated
+    public void setUser(ServiceProps user) {
+        legacy.put("user", user);
+    }
+
+    /**
+     * @deprecated use services.backends.notification
+     */
+    @Deprecated
+    public void setNotification(ServiceProps notification) {
+        legacy.put("notification", notification);
+    }
+
+    // runs once everything is bound: old style services join the backends unless a backend of the same
+    // name is configured, and without services.routes they get the routes the fixed gateway had
+    @PostConstruct
+    public void init() {
+        legacy.forEach((serviceName, props) -> {
+            if (backends.putIfAbsent(serviceName, props) != null) {
+                log.warn("ServicesProperties: services.{} ignored, services.backends.{} is configured",
+                        serviceName, serviceName);
+                return;
+            }
+            log.warn("ServicesProperties: services.{} is deprecated, move it to services.backends.{}",
+                    serviceName, serviceName);
+        });
+        if (routes.isEmpty()) {
+            legacy.keySet().forEach(serviceName -> {
+                String prefix = LEGACY_PREFIXES.get(serviceName);
+                RouteProps route = new RouteProps();
+                route.setId(prefix.substring(1));
+                route.setPrefix(prefix);
+                route.setService(serviceName);
+                routes.add(route);
+            });
+        }
+    }
+
+    public Map<String, ServiceProps> getServices() {
+        return backends;
+    }
+
+    public ServiceProps getService(String serviceName) {
+        ServiceProps props = backends.get(serviceName);
+        if (props == null) {
+            throw new IllegalArgumentException("unknown service: " + serviceName);
+        }
+        return props;
+    }
+
+    // one entry of the route table, unset values fall back to the service
+    @Getter
+    @Setter
+    public static class RouteProps {
+        private String id;
+        // first path segments matched, e.g. /users matches /users and /users/1 but not /usersX
+        private String prefix;
+        private String service;
+        // replaces the matched prefix in the upstream path, unset keeps the path as is
+        private String rewritePrefix;
+        private List<String> methods = new ArrayList<>(List.of("GET", "HEAD", "OPTIONS", "POST", "PUT", "DELETE"));
+        private ForwardingMode mode;
+        // upstream response timeout for this route, ms
+        private Integer responseTimeout;
+        private Boolean cacheEnabled;
+        private Boolean coalescingEnabled;
+        private Boolean hedgeEnabled;
+        // requests of the route may use the share of the concurrency limit kept by priority-reserve
+        private boolean priority = false;
+        // resilience4j instance, <service>Service by default
+        private String circuitBreaker;
+        private final RateLimitProps rateLimit = new RateLimitProps();
+        private Boolean forwardedHeaders;
+        // edits of the headers sent upstream, after the forwarded headers are added
+        private final HeaderRulesProps requestHeaders = new HeaderRulesProps();
+        // edits of the upstream response headers sent to the client
+        private final HeaderRulesProps responseHeaders = new HeaderRulesProps();
+    }
+
+    // applied in order: remove, rename (old name -> new name), add (replaces existing values)
+    // names with dashes as map keys need brackets in yaml, e.g. "[X-Api-Key]": X-Client-Key
+    @Getter
+    @Setter
+    public static class HeaderRulesProps {
+        private List<String> remove = new ArrayList<>();
+        private Map<String, String> rename = new LinkedHashMap<>();
+        private Map<String, String> add = new LinkedHashMap<>();
+    }
+
+    // per client limit of one route, over the limit gets 429 with Retry-After
+    @Getter
+    @Setter
+    public static class RateLimitProps {
+        private boolean enabled = false;
+        private double requestsPerSecond = 100;
+        // requests a client may send at once after being idle, 0 = one second worth
+        private int burst = 0;
+        // ip, or header:<name> (e.g. header:X-Api-Key), clients without the header are keyed by ip
+        private String key = "ip";
+    }
 
     @Getter
     @Setter
@@ -26,6 +174,24 @@ public class ServicesProperties {
         private int responseTimeout = 5000;
         private int healthCheckInterval = 30;
         private int healthCheckTimeout = 3000;
+        private String healthCheckPath = "/actuator/health";
+        // +- share of the interval each round is shifted by, so gateways do not probe in lockstep
+        private double healthCheckJitter = 0.1;
+        // consecutive probe results needed before an instance flips state
+        private int healthyThreshold = 2;
+        private int unhealthyThreshold = 2;
+        private ForwardingMode mode = ForwardingMode.BUFFERED;
+        private UpstreamProtocol protocol = UpstreamProtocol.HTTP1;
+        private LoadBalancerType loadBalancer = LoadBalancerType.ROUND_ROBIN;
+        private final HashProps hash = new HashProps();
+        private final PoolProps pool = new PoolProps();
+        private final OutlierProps outlier = new OutlierProps();
+        private final CacheProps cache = new CacheProps();
+        private final CoalescingProps coalescing = new CoalescingProps();
+        private final RetryProps retry = new RetryProps();
+        private final HedgeProps hedge = new HedgeProps();
+        private final LimitProps limit = new LimitProps();
+        private final CompressionProps compression = new CompressionProps();
 
         public List<String> getInstancesOrSingle() {
             if (instances != null && !instances.isEmpty()) {
@@ -38,4 +204,145 @@ public class ServicesProperties {
             return single;
         }
     }
+
+    // load-balancer: consistent-hash, requests with the same key go to the same instance
+    @Getter
+    @Setter
+    public static class HashProps {
+        // path:<n> (nth segment of the upstream path, /users/{id} is path:2), header:<name> or cookie:<name>
+        private String key = "path:2";
+        // ring points per instance, more of them spread keys more evenly
+        private int virtualNodes = 160;
+        // an instance takes at most factor x the average in-flight, a hot key spills to the next one; 0 = no bound
+        private double loadFactor = 1.25;
+    }
+
+    // gzip toward clients that accept it, bodies the upstream already encoded pass as they are
+    @Getter
+    @Setter
+    public static class CompressionProps {
+        private boolean enabled = false;
+        // smaller bodies are not worth the cpu, bytes
+        private int minSize = 1024;
+        private List<String> mimeTypes = new ArrayList<>(List.of(
+                "application/json", "application/xml", "application/javascript", "text/*"));
+    }
+
+    // upstream connection pool, one per service
+    // sizes left unset fall back to the platform or virtual thread defaults
+    @Getter
+    @Setter
+    public static class PoolProps {
+        private Integer maxPerRoute;
+        private Integer maxTotal;
+        // keep-alive when upstream does not send a Keep-Alive header, ms
+        private long keepAlive = 30000;
+        // max lifetime of a pooled connection, ms, -1 unlimited
+        private long timeToLive = -1;
+        // idle connections are closed after this, ms
+        private long idleEviction = 30000;
+        // re-validate a connection idle for longer than this before reuse, ms
+        private long validateAfterInactivity = 2000;
+    }
+
+    // passive outlier detection from live traffic
+    @Getter
+    @Setter
+    public static class OutlierProps {
+        // when disabled any upstream error marks the instance failed until the next health check
+        private boolean enabled = true;
+        private int consecutive5xx = 5;
+        // connect failures, resets and timeouts
+        private int consecutiveGatewayErrors = 1;
+        // responses slower than latency-factor x peers' average and above latency-floor
+        private int consecutiveSlow = 5;
+        private double latencyFactor = 3.0;
+        private long latencyFloor = 100;
+        // ejection time doubles with every repeated ejection, ms
+        private long baseEjectionTime = 30000;
+        private long maxEjectionTime = 300000;
+        private int maxEjectionPercent = 50;
+        // recovered instances ramp from 10% to full traffic over this window, ms
+        private long slowStart = 30000;
+    }
+
+    // gateway-side http cache for GET responses, buffered and async modes only
+    @Getter
+    @Setter
+    public static class CacheProps {
+        private boolean enabled = false;
+        // larger responses are passed through without being stored, bytes
+        private int maxEntrySize = 256 * 1024;
+        // cached representations of one path (query strings and Vary combinations)
+        private int maxVariants = 16;
+    }
+
+    // identical concurrent GETs share one upstream call, buffered and async modes only
+    @Getter
+    @Setter
+    public static class CoalescingProps {
+        private boolean enabled = false;
+        // request headers that make two GETs different besides path and query
+        private List<String> keyHeaders = new ArrayList<>(List.of("Authorization", "Cookie", "Accept"));
+        // how long a joined request waits for the shared call, ms
+        private long maxWait = 5000;
+    }
+
+    // retries and hedges share one token bucket per service, so they cannot multiply load in an outage
+    @Getter
+    @Setter
+    public static class RetryProps {
+        // every request adds this many tokens, a retry or hedge takes one
+        private double budgetRatio = 0.2;
+        // tokens added per second regardless of traffic, so quiet services can still retry
+        private int minRetriesPerSecond = 10;
+        // base of the exponential backoff with full jitter between retries, ms, 0 retries at once
+        private long backoff = 0;
+        private long maxBackoff = 1000;
+    }
+
+    // hedged GETs: a second attempt to another instance if the first is slower than the delay
+    @Getter
+    @Setter
+    public static class HedgeProps {
+        private boolean enabled = false;
+        // latency percentile of recent upstream calls used as delay, 0 uses the fixed delay
+        private double percentile = 95;
+        // fixed delay, and the delay until enough latency samples are collected, ms
+        private long delay = 100;
+        private long minDelay = 10;
+    }
+
+    // instance lists changed at runtime, on top of backends[].instances
+    @Getter
+    @Setter
+    public static class DiscoveryProps {
+        // file or directory of <service>.instances files, unset = no file source
+        private String file;
+        // full re-read besides watch events, for file systems that deliver none
+        private long reloadInterval = 30000;
+        // removed instances get this long to finish in-flight requests
+        private long drainTimeout = 30000;
+    }
+
+    // adaptive cap on in-flight requests per service, excess is rejected instead of queued
+    @Getter
+    @Setter
+    public static class LimitProps {
+        private boolean enabled = false;
+        private int initialLimit = 20;
+        private int minLimit = 4;
+        private int maxLimit = 1000;
+        // latency may grow to this multiple of the long term average before the limit shrinks
+        private double tolerance = 1.5;
+        // weight of each new limit estimate, 0..1
+        private double smoothing = 0.2;
+        // samples the long term latency average covers
+        private int window = 600;
+        // share of the limit only requests of priority routes may use
+        private double priorityReserve = 0.1;
+        private int rejectStatus = 503;
+        // Retry-After sent with rejections, seconds
+        private int retryAfter = 1;
+    }
 }
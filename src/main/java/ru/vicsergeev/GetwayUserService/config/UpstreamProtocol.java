@@ -0,0 +1,9 @@
+package ru.vicsergeev.GetwayUserService.config;
+
+public enum UpstreamProtocol {
+    // one request per connection at a time, every concurrent request holds its own connection
+    HTTP1,
+    // HTTP/2 over cleartext with prior knowledge, requests multiplexed over a few connections per instance
+    // spoken by the async client only: buffered routes of the service go through it, streaming stays on HTTP/1.1
+    H2C
+}
@@ -2,16 +2,25 @@ package ru.vicsergeev.GetwayUserService.controllers;
 
 
 import jakarta.servlet.http.HttpServletRequest;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.vicsergeev.GetwayUserService.observability.AccessLog;
+import ru.vicsergeev.GetwayUserService.observability.RequestMetrics;
+import ru.vicsergeev.GetwayUserService.observability.TraceHeaders;
+import ru.vicsergeev.GetwayUserService.routing.Route;
+import ru.vicsergeev.GetwayUserService.routing.RouteTable;
 import ru.vicsergeev.GetwayUserService.services.ProxyService;
-import org.springframework.http.MediaType;
+import ru.vicsergeev.GetwayUserService.services.ResponseCompression;
+import ru.vicsergeev.GetwayUserService.services.ratelimit.RateLimiter;
+import org.springframework.util.StreamUtils;
 
 import lombok.RequiredArgsConstructor;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Victor 30.10.2025
@@ -21,72 +30,79 @@ import java.nio.charset.StandardCharsets;
 @RequiredArgsConstructor
 public class GatewayController {
 
-    private static final Logger log = LoggerFactory.getLogger(GatewayController.class);
+    private final RouteTable routeTable;
     private final ProxyService proxyService;
-
-    // User service routes
-    @GetMapping("/users/**")
-    public ResponseEntity<String> handleUserGET(HttpServletRequest request) {
-        String path = extractPathAfterPrefix(request, "/users");
-        return proxyService.forwardToUserService(path, "GET", null, request.getHeaderNames(), request);
-    }
-
-    @PostMapping(value = "/users/**", consumes = MediaType.ALL_VALUE)
-    public ResponseEntity<String> handleUserPOST(HttpServletRequest request, @RequestBody(required = false) byte[] body) {
-        String path = extractPathAfterPrefix(request, "/users");
-        String payload = body != null ? new String(body, StandardCharsets.UTF_8) : null;
-        log.info("Gateway: Received POST /users{}, forwarding to UserService", path);
-        ResponseEntity<String> response = proxyService.forwardToUserService(path, "POST", payload, request.getHeaderNames(), request);
-        log.info("Gateway: Response from UserService - Status: {}", response.getStatusCode());
-        return response;
-    }
-
-    @PutMapping(value = "/users/**", consumes = MediaType.ALL_VALUE)
-    public ResponseEntity<String> handleUserPUT(HttpServletRequest request, @RequestBody(required = false) byte[] body) {
-        String path = extractPathAfterPrefix(request, "/users");
-        String payload = body != null ? new String(body, StandardCharsets.UTF_8) : null;
-        return proxyService.forwardToUserService(path, "PUT", payload, request.getHeaderNames(), request);
-    }
-
-    @DeleteMapping("/users/**")
-    public ResponseEntity<String> handleUserDELETE(HttpServletRequest request) {
-        String path = extractPathAfterPrefix(request, "/users");
-        return proxyService.forwardToUserService(path, "DELETE", null, request.getHeaderNames(), request);
-    }
-
-    // notification service routes
-    @GetMapping("/notifications/**")
-    public ResponseEntity<String> handleNotificationGET(HttpServletRequest request) {
-        String path = extractPathAfterPrefix(request, "/notifications");
-        return proxyService.forwardToNotificationService(path, "GET", null, request.getHeaderNames(), request);
-    }
-
-    @PostMapping(value = "/notifications/**", consumes = MediaType.ALL_VALUE)
-    public ResponseEntity<String> handleNotificationPOST(HttpServletRequest request, @RequestBody(required = false) byte[] body) {
-        String path = extractPathAfterPrefix(request, "/notifications");
-        String payload = body != null ? new String(body, StandardCharsets.UTF_8) : null;
-        return proxyService.forwardToNotificationService(path, "POST", payload, request.getHeaderNames(), request);
+    private final RateLimiter rateLimiter;
+    private final RequestMetrics requestMetrics;
+    private final AccessLog accessLog;
+    private final ResponseCompression responseCompression;
+
+    // single entry point for all proxied traffic, routes come from services.routes
+    // actuator endpoints are mapped before this and are not affected
+    // returns ResponseEntity (buffered), CompletableFuture (async)
+    // or null when the response was already streamed to the client
+    // methods are listed so OPTIONS reaches the routes, spring answers it itself for a mapping without any
+    @RequestMapping(value = "/**", method = {RequestMethod.GET, RequestMethod.HEAD, RequestMethod.OPTIONS,
+            RequestMethod.POST, RequestMethod.PUT, RequestMethod.PATCH, RequestMethod.DELETE})
+    public Object proxy(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long start = System.nanoTime();
+        String requestId = TraceHeaders.requestId(request);
+        response.setHeader(TraceHeaders.REQUEST_ID, requestId);
+        String requestURI = request.getRequestURI();
+        int offset = request.getContextPath().length();
+        Route route = routeTable.match(requestURI, offset);
+        String method = request.getMethod();
+        if (route == null) {
+            return observe(requestId, requestURI, null, method, start,
+                    ResponseEntity.status(404).body("no route for " + requestURI.substring(offset)));
+        }
+        if (!route.allows(method)) {
+            return observe(requestId, requestURI, route, method, start, ResponseEntity.status(405).body("method is not allowed"));
+        }
+        long wait = rateLimiter.check(route, request);
+        if (wait > 0) {
+            // whole seconds, rounded up so a client honouring it is not rejected again
+            long retryAfter = (wait + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+            return observe(requestId, requestURI, route, method, start,
+                    ResponseEntity.status(429).header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                            .body("rate limit exceeded"));
+        }
+
+        String path = route.upstreamPath(requestURI, offset);
+        boolean hasBody = method.equals("POST") || method.equals("PUT") || method.equals("PATCH");
+        String serviceName = route.getServiceName();
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return switch (route.getMode()) {
+            case STREAMING -> {
+                proxyService.stream(route, path, method, request, response);
+                observe(requestId, requestURI, route, method, start, response.getStatus());
+                yield null;
+            }
+            case ASYNC -> proxyService.forwardAsync(route, path, method, hasBody ? readBody(request) : null, request)
+                    .thenApply(result -> responseCompression.compress(serviceName, acceptEncoding, result))
+                    .whenComplete((result, error) ->
+                            observe(requestId, requestURI, route, method, start, result != null ? result.getStatusCode().value() : 500));
+            default -> observe(requestId, requestURI, route, method, start, responseCompression.compress(serviceName,
+                    acceptEncoding, proxyService.forward(route, path, method, hasBody ? readBody(request) : null, request)));
+        };
     }
 
-    @PutMapping(value = "/notifications/**", consumes = MediaType.ALL_VALUE)
-    public ResponseEntity<String> handleNotificationPUT(HttpServletRequest request, @RequestBody(required = false) byte[] body) {
-        String path = extractPathAfterPrefix(request, "/notifications");
-        String payload = body != null ? new String(body, StandardCharsets.UTF_8) : null;
-        return proxyService.forwardToNotificationService(path, "PUT", payload, request.getHeaderNames(), request);
+    private <T> ResponseEntity<T> observe(String requestId, String requestURI, Route route, String method, long start,
+                                          ResponseEntity<T> result) {
+        observe(requestId, requestURI, route, method, start, result.getStatusCode().value());
+        return result;
     }
 
-    @DeleteMapping("/notifications/**")
-    public ResponseEntity<String> handleNotificationDELETE(HttpServletRequest request) {
-        String path = extractPathAfterPrefix(request, "/notifications" );
-        return proxyService.forwardToNotificationService(path, "DELETE", null, request.getHeaderNames(), request);
+    // takes plain values: in async mode this runs after the servlet request may have been recycled
+    private void observe(String requestId, String requestURI, Route route, String method, long start, int status) {
+        long nanos = System.nanoTime() - start;
+        requestMetrics.record(route, method, status, nanos);
+        accessLog.log(requestId, method, requestURI, route != null ? route.getId() : "-", status, nanos);
     }
 
-
-    // aux method extract path after /users or /notifications
-    private String extractPathAfterPrefix(HttpServletRequest request, String prefix) {
-        String requestURI = request.getRequestURI();
-        String contextPath = request.getContextPath();
-        String path = requestURI.substring(contextPath.length());
-        return path.substring(prefix.length());
+    // aux method read whole body for buffered mode, null when empty
+    private String readBody(HttpServletRequest request) throws IOException {
+        byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+        return body.length > 0 ? new String(body, StandardCharsets.UTF_8) : null;
     }
 }
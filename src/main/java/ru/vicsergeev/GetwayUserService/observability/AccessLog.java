@@ -0,0 +1,83 @@
+package ru.vicsergeev.GetwayUserService.observability;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// one line per sampled request on the gateway.access logger, 5xx are always logged
+// request threads only enqueue; formatting and appending happen on a single writer thread,
+// and entries are dropped (and counted) rather than blocking when it falls behind
+@Component
+@RequiredArgsConstructor
+public class AccessLog {
+    private static final Logger log = LoggerFactory.getLogger("gateway.access");
+
+    private final ServicesProperties services;
+    private final MeterRegistry meterRegistry;
+
+    private final LongAdder dropped = new LongAdder();
+    private BlockingQueue<Entry> queue;
+    private Thread writer;
+
+    @PostConstruct
+    public void init() {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(services.getAccessLogQueueSize());
+        writer = new Thread(this::drain, "gateway-access-log");
+        writer.setDaemon(true);
+        writer.start();
+        FunctionCounter.builder("gateway.access.log.dropped", dropped, LongAdder::sum)
+                .description("access log entries dropped because the writer fell behind")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer != null) {
+            writer.interrupt();
+        }
+    }
+
+    public void log(String requestId, String method, String path, String routeId, int status, long nanos) {
+        if (queue == null) {
+            return;
+        }
+        double sampleRate = services.getAccessLogSampleRate();
+        if (status < 500 && (sampleRate <= 0 || sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        if (!queue.offer(new Entry(requestId, method, path, routeId, status, nanos))) {
+            dropped.increment();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Entry entry = queue.take();
+                log.info("{} {} {} route={} status={} {}ms", entry.requestId(), entry.method(), entry.path(),
+                        entry.routeId(), entry.status(), TimeUnit.NANOSECONDS.toMillis(entry.nanos()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Entry(String requestId, String method, String path, String routeId, int status, long nanos) {
+    }
+}
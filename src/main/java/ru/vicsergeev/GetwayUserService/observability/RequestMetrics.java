@@ -0,0 +1,61 @@
+package ru.vicsergeev.GetwayUserService.observability;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.routing.Route;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// gateway.requests timer per route, method and status class, i.e. what the client saw
+// including cache hits, rejections and fallbacks
+@Component
+@RequiredArgsConstructor
+public class RequestMetrics {
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS", "other"};
+    // requests that matched no route
+    private static final String NO_ROUTE = "none";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Timer[]> timers = new ConcurrentHashMap<>();
+
+    // route null when nothing matched
+    public void record(Route route, String method, int status, long nanos) {
+        String routeId = route != null ? route.getId() : NO_ROUTE;
+        Timer[] routeTimers = timers.get(routeId);
+        if (routeTimers == null) {
+            routeTimers = timers.computeIfAbsent(routeId, id -> new Timer[METHODS.length * StatusClass.TAGS.length]);
+        }
+        int index = methodIndex(method) * StatusClass.TAGS.length + StatusClass.index(status);
+        Timer timer = routeTimers[index];
+        if (timer == null) {
+            // racing threads register the same meter, the registry hands both the same instance
+            timer = routeTimers[index] = Timer.builder("gateway.requests")
+                    .description("requests as answered to the client")
+                    .tag("route", routeId)
+                    .tag("method", METHODS[methodIndex(method)])
+                    .tag("status", StatusClass.TAGS[StatusClass.index(status)])
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static int methodIndex(String method) {
+        return switch (method) {
+            case "GET" -> 0;
+            case "POST" -> 1;
+            case "PUT" -> 2;
+            case "DELETE" -> 3;
+            case "PATCH" -> 4;
+            case "HEAD" -> 5;
+            case "OPTIONS" -> 6;
+            default -> 7;
+        };
+    }
+}
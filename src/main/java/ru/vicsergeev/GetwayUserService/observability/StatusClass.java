@@ -0,0 +1,14 @@
+package ru.vicsergeev.GetwayUserService.observability;
+
+// status tag values, index 0 is a call that got no response at all
+final class StatusClass {
+    static final String[] TAGS = {"error", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private StatusClass() {
+    }
+
+    static int index(int status) {
+        int index = status / 100;
+        return index >= 1 && index <= 5 ? index : 0;
+    }
+}
@@ -0,0 +1,194 @@
+package ru.vicsergeev.GetwayUserService.observability;
+
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.client5.http.EndpointInfo;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.async.AsyncExecRuntime;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncClientExchangeHandler;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// async client counterpart of TimedExecRuntime: lease and connect are timed around their
+// callbacks, time to first byte and body through the exec callback of the exchange
+public final class TimedAsyncExecRuntime implements AsyncExecRuntime {
+    private final AsyncExecRuntime delegate;
+    private final UpstreamMetrics.PhaseTimers timers;
+    // when the request went out, read by the exec callback on the io thread
+    private volatile long sent;
+
+    private TimedAsyncExecRuntime(AsyncExecRuntime delegate, UpstreamMetrics.PhaseTimers timers) {
+        this.delegate = delegate;
+        this.timers = timers;
+    }
+
+    public static AsyncExecChainHandler interceptor(String serviceName, UpstreamMetrics metrics) {
+        return (request, entityProducer, scope, chain, callback) -> {
+            UpstreamMetrics.PhaseTimers timers = metrics.phases(serviceName, scope.route.getTargetHost());
+            TimedAsyncExecRuntime runtime = new TimedAsyncExecRuntime(scope.execRuntime, timers);
+            AsyncExecChain.Scope timed = new AsyncExecChain.Scope(scope.exchangeId, scope.route, scope.originalRequest,
+                    scope.cancellableDependency, scope.clientContext, runtime, scope.scheduler, scope.execCount);
+            chain.proceed(request, entityProducer, timed, runtime.timed(callback));
+        };
+    }
+
+    private AsyncExecCallback timed(AsyncExecCallback callback) {
+        return new AsyncExecCallback() {
+            private long headers;
+
+            @Override
+            public AsyncDataConsumer handleResponse(HttpResponse response, EntityDetails entityDetails)
+                    throws HttpException, IOException {
+                headers = System.nanoTime();
+                if (sent != 0) {
+                    timers.ttfb().record(headers - sent, TimeUnit.NANOSECONDS);
+                }
+                return callback.handleResponse(response, entityDetails);
+            }
+
+            @Override
+            public void handleInformationResponse(HttpResponse response) throws HttpException, IOException {
+                callback.handleInformationResponse(response);
+            }
+
+            @Override
+            public void completed() {
+                if (headers != 0) {
+                    timers.body().record(System.nanoTime() - headers, TimeUnit.NANOSECONDS);
+                }
+                callback.completed();
+            }
+
+            @Override
+            public void failed(Exception cause) {
+                callback.failed(cause);
+            }
+        };
+    }
+
+    @Override
+    public Cancellable acquireEndpoint(String id, HttpRoute route, Object state, HttpClientContext context,
+                                       FutureCallback<AsyncExecRuntime> callback) {
+        return delegate.acquireEndpoint(id, route, state, context, timed(callback, timers.lease()));
+    }
+
+    @Override
+    public Cancellable connectEndpoint(HttpClientContext context, FutureCallback<AsyncExecRuntime> callback) {
+        return delegate.connectEndpoint(context, timed(callback, timers.connect()));
+    }
+
+    @Override
+    public Cancellable execute(String id, AsyncClientExchangeHandler exchangeHandler, HttpClientContext context) {
+        sent = System.nanoTime();
+        return delegate.execute(id, exchangeHandler, context);
+    }
+
+    // callers get this runtime back, not the wrapped one, so later steps stay timed
+    private FutureCallback<AsyncExecRuntime> timed(FutureCallback<AsyncExecRuntime> callback,
+                                                   Timer timer) {
+        long start = System.nanoTime();
+        return new FutureCallback<>() {
+            @Override
+            public void completed(AsyncExecRuntime runtime) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                callback.completed(TimedAsyncExecRuntime.this);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                callback.failed(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                callback.cancelled();
+            }
+        };
+    }
+
+    @Override
+    public boolean isEndpointAcquired() {
+        return delegate.isEndpointAcquired();
+    }
+
+    @Override
+    public void releaseEndpoint() {
+        delegate.releaseEndpoint();
+    }
+
+    @Override
+    public void discardEndpoint() {
+        delegate.discardEndpoint();
+    }
+
+    @Override
+    public boolean isEndpointConnected() {
+        return delegate.isEndpointConnected();
+    }
+
+    @Override
+    public void disconnectEndpoint() {
+        delegate.disconnectEndpoint();
+    }
+
+    @Override
+    public void upgradeTls(HttpClientContext context) {
+        delegate.upgradeTls(context);
+    }
+
+    @Override
+    public void upgradeTls(HttpClientContext context, FutureCallback<AsyncExecRuntime> callback) {
+        delegate.upgradeTls(context, callback == null ? null : new FutureCallback<>() {
+            @Override
+            public void completed(AsyncExecRuntime runtime) {
+                callback.completed(TimedAsyncExecRuntime.this);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                callback.failed(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                callback.cancelled();
+            }
+        });
+    }
+
+    @Override
+    public EndpointInfo getEndpointInfo() {
+        return delegate.getEndpointInfo();
+    }
+
+    @Override
+    public boolean validateConnection() {
+        return delegate.validateConnection();
+    }
+
+    @Override
+    public void markConnectionReusable(Object state, TimeValue validityTime) {
+        delegate.markConnectionReusable(state, validityTime);
+    }
+
+    @Override
+    public void markConnectionNonReusable() {
+        delegate.markConnectionNonReusable();
+    }
+
+    @Override
+    public AsyncExecRuntime fork() {
+        return new TimedAsyncExecRuntime(delegate.fork(), timers);
+    }
+}
@@ -0,0 +1,191 @@
+package ru.vicsergeev.GetwayUserService.observability;
+
+import org.apache.hc.client5.http.EndpointInfo;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecRuntime;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.CancellableDependency;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.HttpResponseInformationCallback;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+// blocking client: the exec runtime of each exchange wrapped to time the pool lease,
+// connection setup, time to first byte and reading of the body
+// installed before the CONNECT element, see interceptor()
+public final class TimedExecRuntime implements ExecRuntime {
+    private final ExecRuntime delegate;
+    private final UpstreamMetrics.PhaseTimers timers;
+
+    private TimedExecRuntime(ExecRuntime delegate, UpstreamMetrics.PhaseTimers timers) {
+        this.delegate = delegate;
+        this.timers = timers;
+    }
+
+    public static ExecChainHandler interceptor(String serviceName, UpstreamMetrics metrics) {
+        return (request, scope, chain) -> {
+            UpstreamMetrics.PhaseTimers timers = metrics.phases(serviceName, scope.route.getTargetHost());
+            ExecChain.Scope timed = new ExecChain.Scope(scope.exchangeId, scope.route, scope.originalRequest,
+                    new TimedExecRuntime(scope.execRuntime, timers), scope.clientContext);
+            return chain.proceed(request, timed);
+        };
+    }
+
+    @Override
+    public void acquireEndpoint(String id, HttpRoute route, Object state, HttpClientContext context) throws IOException {
+        long start = System.nanoTime();
+        delegate.acquireEndpoint(id, route, state, context);
+        timers.lease().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectEndpoint(HttpClientContext context) throws IOException {
+        long start = System.nanoTime();
+        delegate.connectEndpoint(context);
+        timers.connect().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public ClassicHttpResponse execute(String id, ClassicHttpRequest request, HttpClientContext context)
+            throws IOException, HttpException {
+        long start = System.nanoTime();
+        return timed(delegate.execute(id, request, context), start);
+    }
+
+    @Override
+    public ClassicHttpResponse execute(String id, ClassicHttpRequest request,
+                                       HttpResponseInformationCallback informationCallback, HttpClientContext context)
+            throws IOException, HttpException {
+        long start = System.nanoTime();
+        return timed(delegate.execute(id, request, informationCallback, context), start);
+    }
+
+    private ClassicHttpResponse timed(ClassicHttpResponse response, long start) {
+        long headers = System.nanoTime();
+        timers.ttfb().record(headers - start, TimeUnit.NANOSECONDS);
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new TimedEntity(entity, timers, headers));
+        }
+        return response;
+    }
+
+    @Override
+    public boolean isExecutionAborted() {
+        return delegate.isExecutionAborted();
+    }
+
+    @Override
+    public boolean isEndpointAcquired() {
+        return delegate.isEndpointAcquired();
+    }
+
+    @Override
+    public void releaseEndpoint() {
+        delegate.releaseEndpoint();
+    }
+
+    @Override
+    public void discardEndpoint() {
+        delegate.discardEndpoint();
+    }
+
+    @Override
+    public boolean isEndpointConnected() {
+        return delegate.isEndpointConnected();
+    }
+
+    @Override
+    public void disconnectEndpoint() throws IOException {
+        delegate.disconnectEndpoint();
+    }
+
+    @Override
+    public void upgradeTls(HttpClientContext context) throws IOException {
+        delegate.upgradeTls(context);
+    }
+
+    @Override
+    public EndpointInfo getEndpointInfo() {
+        return delegate.getEndpointInfo();
+    }
+
+    @Override
+    public boolean isConnectionReusable() {
+        return delegate.isConnectionReusable();
+    }
+
+    @Override
+    public void markConnectionReusable(Object state, TimeValue validityTime) {
+        delegate.markConnectionReusable(state, validityTime);
+    }
+
+    @Override
+    public void markConnectionNonReusable() {
+        delegate.markConnectionNonReusable();
+    }
+
+    @Override
+    public ExecRuntime fork(CancellableDependency cancellableDependency) {
+        return new TimedExecRuntime(delegate.fork(cancellableDependency), timers);
+    }
+
+    // body phase ends when the stream hits its end or is closed, whichever comes first
+    private static final class TimedEntity extends HttpEntityWrapper {
+        private final UpstreamMetrics.PhaseTimers timers;
+        private final long headers;
+        private boolean recorded;
+
+        private TimedEntity(HttpEntity entity, UpstreamMetrics.PhaseTimers timers, long headers) {
+            super(entity);
+            this.timers = timers;
+            this.headers = headers;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b < 0) {
+                        done();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int n = super.read(buffer, offset, length);
+                    if (n < 0) {
+                        done();
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    done();
+                    super.close();
+                }
+            };
+        }
+
+        private void done() {
+            if (!recorded) {
+                recorded = true;
+                timers.body().record(System.nanoTime() - headers, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
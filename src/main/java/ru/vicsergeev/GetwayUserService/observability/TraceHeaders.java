@@ -0,0 +1,114 @@
+package ru.vicsergeev.GetwayUserService.observability;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// X-Request-Id and W3C traceparent for upstream calls: valid inbound values are kept,
+// missing or malformed ones are generated, and every upstream attempt gets its own span id
+public final class TraceHeaders {
+    public static final String REQUEST_ID = "X-Request-Id";
+    public static final String TRACEPARENT = "traceparent";
+    // longer or odd ids would go upstream and into the access log as the client sent them
+    private static final int MAX_REQUEST_ID_LENGTH = 128;
+    private static final String REQUEST_ID_ATTRIBUTE = TraceHeaders.class.getName() + ".requestId";
+    private static final String TRACEPARENT_ATTRIBUTE = TraceHeaders.class.getName() + ".traceparent";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private TraceHeaders() {
+    }
+
+    // id of the client request, taken from the header or generated once and kept on the request
+    public static String requestId(HttpServletRequest request) {
+        Object cached = request.getAttribute(REQUEST_ID_ATTRIBUTE);
+        if (cached != null) {
+            return (String) cached;
+        }
+        String requestId = request.getHeader(REQUEST_ID);
+        if (!isValidRequestId(requestId)) {
+            requestId = hex(16);
+        }
+        request.setAttribute(REQUEST_ID_ATTRIBUTE, requestId);
+        return requestId;
+    }
+
+    // sets the propagation headers on an upstream request whose headers were copied from request,
+    // calling it again for a retry of the request keeps the trace and gives the call a new span id
+    public static void propagate(HttpServletRequest request, HttpHeaders headers) {
+        headers.set(REQUEST_ID, requestId(request));
+        headers.set(TRACEPARENT, childTraceparent(parentTraceparent(request)));
+    }
+
+    // traceparent for one attempt of an upstream request whose headers went through propagate:
+    // the same trace with a span id of its own, null when the headers carry none (removed by a route rule)
+    public static String attemptTraceparent(HttpHeaders headers) {
+        String traceparent = headers.getFirst(TRACEPARENT);
+        return traceparent != null ? childTraceparent(traceparent) : null;
+    }
+
+    // the client's traceparent, or a root generated once per request so all its attempts share one trace
+    private static String parentTraceparent(HttpServletRequest request) {
+        Object cached = request.getAttribute(TRACEPARENT_ATTRIBUTE);
+        if (cached != null) {
+            return (String) cached;
+        }
+        String traceparent = request.getHeader(TRACEPARENT);
+        if (!isValidTraceparent(traceparent)) {
+            traceparent = "00-" + hex(16) + "-" + hex(8) + "-01";
+        }
+        request.setAttribute(TRACEPARENT_ATTRIBUTE, traceparent);
+        return traceparent;
+    }
+
+    static String childTraceparent(String parent) {
+        if (isValidTraceparent(parent)) {
+            return parent.substring(0, 36) + hex(8) + parent.substring(52);
+        }
+        return "00-" + hex(16) + "-" + hex(8) + "-01";
+    }
+
+    // version 00: 00-<32 hex trace id>-<16 hex parent id>-<2 hex flags>
+    private static boolean isValidTraceparent(String traceparent) {
+        if (traceparent == null || traceparent.length() != 55 || !traceparent.startsWith("00-")
+                || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-') {
+            return false;
+        }
+        for (int i = 3; i < 55; i++) {
+            char c = traceparent.charAt(i);
+            if (i != 35 && i != 52 && (c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // letters, digits and - _ . : + / = cover uuids, hex, base64 and the usual prefixed ids
+    static boolean isValidRequestId(String requestId) {
+        if (requestId == null || requestId.isEmpty() || requestId.length() > MAX_REQUEST_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < requestId.length(); i++) {
+            char c = requestId.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == ':' || c == '+' || c == '/' || c == '=';
+            if (!allowed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String hex(int bytes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[bytes * 2];
+        for (int i = 0; i < chars.length; i += 16) {
+            long bits = random.nextLong();
+            for (int j = i; j < Math.min(i + 16, chars.length); j++) {
+                chars[j] = HEX[(int) (bits & 0xF)];
+                bits >>>= 4;
+            }
+        }
+        return new String(chars);
+    }
+}
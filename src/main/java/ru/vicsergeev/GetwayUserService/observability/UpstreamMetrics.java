@@ -0,0 +1,100 @@
+package ru.vicsergeev.GetwayUserService.observability;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.core5.http.HttpHost;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// per instance upstream timers: whole calls by status class, and the phases of each call
+// timers are built once per instance and tag value, the request path only indexes arrays
+@Component
+@RequiredArgsConstructor
+public class UpstreamMetrics {
+    private final MeterRegistry meterRegistry;
+
+    private final Map<ServiceInstance, Timer[]> calls = new ConcurrentHashMap<>();
+    private final Map<String, Map<HttpHost, PhaseTimers>> phases = new ConcurrentHashMap<>();
+
+    // status 0 when the call failed without a response
+    public void record(ServiceInstance instance, int status, long nanos) {
+        Timer[] timers = calls.get(instance);
+        if (timers == null) {
+            timers = calls.computeIfAbsent(instance, i -> new Timer[StatusClass.TAGS.length]);
+        }
+        int index = StatusClass.index(status);
+        Timer timer = timers[index];
+        if (timer == null) {
+            // racing threads register the same meter, the registry hands both the same instance
+            timer = timers[index] = Timer.builder("gateway.upstream.requests")
+                    .description("upstream calls, every attempt including retries and hedges")
+                    .tag("service", instance.getServiceName())
+                    .tag("instance", instance.getUrl())
+                    .tag("status", StatusClass.TAGS[index])
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // instance left the service: its meters go, so scaling up and down does not grow the registry
+    public void forget(ServiceInstance instance) {
+        Timer[] timers = calls.remove(instance);
+        if (timers != null) {
+            for (Timer timer : timers) {
+                if (timer != null) {
+                    meterRegistry.remove(timer);
+                }
+            }
+        }
+        Map<HttpHost, PhaseTimers> hosts = phases.get(instance.getServiceName());
+        if (hosts != null) {
+            hosts.entrySet().removeIf(entry -> {
+                if (!entry.getKey().toURI().equals(instance.getUrl())) {
+                    return false;
+                }
+                PhaseTimers removed = entry.getValue();
+                for (Timer timer : List.of(removed.lease(), removed.connect(), removed.ttfb(), removed.body())) {
+                    meterRegistry.remove(timer);
+                }
+                return true;
+            });
+        }
+    }
+
+    // phase timers for one upstream host of a service, looked up once per exchange
+    PhaseTimers phases(String serviceName, HttpHost host) {
+        Map<HttpHost, PhaseTimers> hosts = phases.computeIfAbsent(serviceName, s -> new ConcurrentHashMap<>());
+        PhaseTimers timers = hosts.get(host);
+        return timers != null ? timers : hosts.computeIfAbsent(host, h -> newPhaseTimers(serviceName, h));
+    }
+
+    private PhaseTimers newPhaseTimers(String serviceName, HttpHost host) {
+        String instance = host.toURI();
+        return new PhaseTimers(
+                phaseTimer(serviceName, instance, "lease", "waiting for a pooled connection"),
+                phaseTimer(serviceName, instance, "connect", "opening a new connection, tls included"),
+                phaseTimer(serviceName, instance, "ttfb", "request sent until response headers arrived"),
+                phaseTimer(serviceName, instance, "body", "response headers until the body was read"));
+    }
+
+    private Timer phaseTimer(String serviceName, String instance, String phase, String description) {
+        return Timer.builder("gateway.upstream.phase")
+                .description(description)
+                .tag("service", serviceName)
+                .tag("instance", instance)
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    record PhaseTimers(Timer lease, Timer connect, Timer ttfb, Timer body) {
+    }
+}
@@ -0,0 +1,49 @@
+package ru.vicsergeev.GetwayUserService.routing;
+
+import org.springframework.http.HttpHeaders;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import java.util.List;
+import java.util.Map;
+
+// header edits of one route and direction: remove, then rename, then add
+// added headers replace whatever the client / upstream sent under the same name
+public final class HeaderRules {
+    public static final HeaderRules NONE = new HeaderRules(List.of(), Map.of(), Map.of());
+
+    private final List<String> remove;
+    private final Map<String, String> rename;
+    private final Map<String, String> add;
+
+    private HeaderRules(List<String> remove, Map<String, String> rename, Map<String, String> add) {
+        this.remove = remove;
+        this.rename = rename;
+        this.add = add;
+    }
+
+    public static HeaderRules of(ServicesProperties.HeaderRulesProps props) {
+        if (props.getRemove().isEmpty() && props.getRename().isEmpty() && props.getAdd().isEmpty()) {
+            return NONE;
+        }
+        return new HeaderRules(List.copyOf(props.getRemove()), Map.copyOf(props.getRename()), Map.copyOf(props.getAdd()));
+    }
+
+    public boolean isEmpty() {
+        return this == NONE;
+    }
+
+    public void apply(HttpHeaders headers) {
+        for (String name : remove) {
+            headers.remove(name);
+        }
+        for (Map.Entry<String, String> entry : rename.entrySet()) {
+            List<String> values = headers.remove(entry.getKey());
+            if (values != null) {
+                headers.addAll(entry.getValue(), values);
+            }
+        }
+        for (Map.Entry<String, String> entry : add.entrySet()) {
+            headers.set(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.vicsergeev.GetwayUserService.routing;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.Getter;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.springframework.web.client.RestTemplate;
+import ru.vicsergeev.GetwayUserService.config.ForwardingMode;
+import ru.vicsergeev.GetwayUserService.services.balancer.HashKey;
+import ru.vicsergeev.GetwayUserService.services.ratelimit.RateLimitPolicy;
+
+import java.util.Set;
+
+// compiled route: config with service defaults applied and the upstream clients resolved
+@Getter
+public final class Route {
+    private final String id;
+    private final String prefix;
+    private final String serviceName;
+    private final String rewritePrefix;
+    private final Set<String> methods;
+    private final ForwardingMode mode;
+    // service speaks h2c, buffered calls go through the async client
+    private final boolean h2c;
+    private final boolean cacheEnabled;
+    private final boolean coalescingEnabled;
+    private final boolean hedgeEnabled;
+    // may use the concurrency limit's priority reserve
+    private final boolean priority;
+    private final String circuitBreaker;
+    // null when the route is not rate limited
+    private final RateLimitPolicy rateLimit;
+    private final boolean forwardedHeaders;
+    private final HeaderRules requestHeaders;
+    private final HeaderRules responseHeaders;
+    // null unless the service balances by consistent hash
+    private final HashKey hashKey;
+    // used in logs and fallback messages, e.g. UserService
+    private final String displayName;
+    private final RestTemplate restTemplate;
+    private final RequestConfig asyncRequestConfig;
+
+    Route(String id, String prefix, String serviceName, String rewritePrefix, Set<String> methods, ForwardingMode mode,
+          boolean h2c, boolean cacheEnabled, boolean coalescingEnabled, boolean hedgeEnabled, boolean priority,
+          String circuitBreaker,
+          RateLimitPolicy rateLimit, boolean forwardedHeaders, HeaderRules requestHeaders, HeaderRules responseHeaders,
+          HashKey hashKey, RestTemplate restTemplate, RequestConfig asyncRequestConfig) {
+        this.id = id;
+        this.prefix = prefix;
+        this.serviceName = serviceName;
+        this.rewritePrefix = rewritePrefix;
+        this.methods = methods;
+        this.mode = mode;
+        this.h2c = h2c;
+        this.cacheEnabled = cacheEnabled;
+        this.coalescingEnabled = coalescingEnabled;
+        this.hedgeEnabled = hedgeEnabled;
+        this.priority = priority;
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimit = rateLimit;
+        this.forwardedHeaders = forwardedHeaders;
+        this.requestHeaders = requestHeaders;
+        this.responseHeaders = responseHeaders;
+        this.hashKey = hashKey;
+        this.displayName = Character.toUpperCase(circuitBreaker.charAt(0)) + circuitBreaker.substring(1);
+        this.restTemplate = restTemplate;
+        this.asyncRequestConfig = asyncRequestConfig;
+    }
+
+    public boolean allows(String method) {
+        return methods.contains(method);
+    }
+
+    // upstream path for the request path, matched prefix swapped for the rewrite prefix
+    public String upstreamPath(String requestPath, int offset) {
+        return rewritePrefix + requestPath.substring(offset + prefix.length());
+    }
+
+    // consistent hash key of the request, null when the service does not hash or the request has no key
+    public String hashKey(String upstreamPath, HttpServletRequest request) {
+        return hashKey != null ? hashKey.extract(upstreamPath, request) : null;
+    }
+
+    // the matched prefix when the upstream path does not start with it, for X-Forwarded-Prefix
+    public String strippedPrefix() {
+        return rewritePrefix.equals(prefix) ? null : prefix;
+    }
+
+    @Override
+    public String toString() {
+        return id + " " + (prefix.isEmpty() ? "/" : prefix) + " -> " + serviceName + rewritePrefix;
+    }
+}
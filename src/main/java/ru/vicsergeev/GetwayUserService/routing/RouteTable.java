@@ -0,0 +1,148 @@
+package ru.vicsergeev.GetwayUserService.routing;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ForwardingMode;
+import ru.vicsergeev.GetwayUserService.config.LoadBalancerType;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.config.UpstreamProtocol;
+import ru.vicsergeev.GetwayUserService.services.UpstreamClients;
+import ru.vicsergeev.GetwayUserService.services.balancer.HashKey;
+import ru.vicsergeev.GetwayUserService.services.ratelimit.RateLimitPolicy;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// routes from services.routes compiled into a character trie over their prefixes
+// lookup walks the request path once, longest prefix ending on a segment boundary wins
+@Component
+@RequiredArgsConstructor
+public class RouteTable {
+    private static final Logger log = LoggerFactory.getLogger(RouteTable.class);
+    // paths are ASCII once percent-encoded, anything else cannot match a configured prefix
+    private static final int ALPHABET = 128;
+
+    private final ServicesProperties services;
+    private final UpstreamClients upstreamClients;
+
+    private final Node root = new Node();
+
+    @PostConstruct
+    public void init() {
+        Set<String> ids = new HashSet<>();
+        for (ServicesProperties.RouteProps props : services.getRoutes()) {
+            Route route = compile(props);
+            if (!ids.add(route.getId())) {
+                throw new IllegalStateException("duplicate route id: " + route.getId());
+            }
+            add(route);
+            log.info("RouteTable: registered route {}", route);
+        }
+    }
+
+    // route for the request path starting at offset (after the context path), null if none matches
+    // no allocation: a char walk down the trie
+    public Route match(String path, int offset) {
+        Node node = root;
+        Route matched = isBoundary(path, offset) ? root.route : null;
+        for (int i = offset; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c >= ALPHABET || node.children == null || (node = node.children[c]) == null) {
+                break;
+            }
+            if (node.route != null && isBoundary(path, i + 1)) {
+                matched = node.route;
+            }
+        }
+        return matched;
+    }
+
+    private static boolean isBoundary(String path, int index) {
+        return index == path.length() || path.charAt(index) == '/';
+    }
+
+    private void add(Route route) {
+        Node node = root;
+        String prefix = route.getPrefix();
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c >= ALPHABET) {
+                throw new IllegalStateException("route " + route.getId() + ": prefix must be ASCII: " + prefix);
+            }
+            if (node.children == null) {
+                node.children = new Node[ALPHABET];
+            }
+            if (node.children[c] == null) {
+                node.children[c] = new Node();
+            }
+            node = node.children[c];
+        }
+        if (node.route != null) {
+            throw new IllegalStateException("routes " + node.route.getId() + " and " + route.getId()
+                    + " have the same prefix: " + prefix);
+        }
+        node.route = route;
+    }
+
+    private Route compile(ServicesProperties.RouteProps props) {
+        if (props.getService() == null || !services.getServices().containsKey(props.getService())) {
+            throw new IllegalStateException("route " + props.getId() + ": unknown service " + props.getService());
+        }
+        if (props.getPrefix() == null || !props.getPrefix().startsWith("/")) {
+            throw new IllegalStateException("route " + props.getId() + ": prefix must start with /");
+        }
+        ServicesProperties.ServiceProps service = services.getService(props.getService());
+        String prefix = normalize(props.getPrefix());
+        String id = props.getId() != null ? props.getId() : props.getService();
+        Set<String> methods = new HashSet<>();
+        for (String method : props.getMethods()) {
+            methods.add(method.toUpperCase(Locale.ROOT));
+        }
+        int responseTimeout = props.getResponseTimeout() != null ? props.getResponseTimeout() : service.getResponseTimeout();
+        ForwardingMode mode = props.getMode() != null ? props.getMode() : service.getMode();
+        boolean h2c = service.getProtocol() == UpstreamProtocol.H2C;
+        if (h2c && mode == ForwardingMode.STREAMING) {
+            log.warn("RouteTable: route {} streams, {} is called over HTTP/1.1 for it", id, props.getService());
+        }
+
+        return new Route(
+                id,
+                prefix,
+                props.getService(),
+                props.getRewritePrefix() != null ? normalize(props.getRewritePrefix()) : prefix,
+                Set.copyOf(methods),
+                mode,
+                h2c,
+                props.getCacheEnabled() != null ? props.getCacheEnabled() : service.getCache().isEnabled(),
+                props.getCoalescingEnabled() != null ? props.getCoalescingEnabled() : service.getCoalescing().isEnabled(),
+                props.getHedgeEnabled() != null ? props.getHedgeEnabled() : service.getHedge().isEnabled(),
+                props.isPriority(),
+                props.getCircuitBreaker() != null ? props.getCircuitBreaker() : props.getService() + "Service",
+                RateLimitPolicy.of(id, props.getRateLimit()),
+                props.getForwardedHeaders() != null ? props.getForwardedHeaders() : services.isForwardedHeaders(),
+                HeaderRules.of(props.getRequestHeaders()),
+                HeaderRules.of(props.getResponseHeaders()),
+                service.getLoadBalancer() == LoadBalancerType.CONSISTENT_HASH ? HashKey.of(service.getHash().getKey()) : null,
+                upstreamClients.restTemplate(props.getService(), responseTimeout),
+                upstreamClients.requestConfig(props.getService(), responseTimeout));
+    }
+
+    // no trailing slash, so "/" becomes the empty catch-all prefix
+    private static String normalize(String prefix) {
+        String normalized = prefix.trim();
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private static final class Node {
+        private Node[] children;
+        private Route route;
+    }
+}
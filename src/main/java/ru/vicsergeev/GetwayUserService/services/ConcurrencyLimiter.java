@@ -0,0 +1,200 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// gradient limiter per service: the limit follows the ratio of long term to recent latency,
+// shrinking while latency climbs (upstream queueing) and growing by sqrt(limit) while it is flat
+@Component
+@RequiredArgsConstructor
+public class ConcurrencyLimiter {
+    private final ServicesProperties services;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    // null when the service is at its limit and the request has to be rejected
+    public Permit tryAcquire(String serviceName, boolean priority) {
+        Limit limit = limit(serviceName);
+        if (!limit.props.isEnabled()) {
+            return Permit.UNLIMITED;
+        }
+        if (!limit.tryAcquire(priority)) {
+            (priority ? limit.rejectedPriority : limit.rejected).increment();
+            return null;
+        }
+        return new Permit(limit);
+    }
+
+    public ServicesProperties.LimitProps props(String serviceName) {
+        return limit(serviceName).props;
+    }
+
+    private Limit limit(String serviceName) {
+        Limit limit = limits.get(serviceName);
+        return limit != null ? limit : limits.computeIfAbsent(serviceName, this::newLimit);
+    }
+
+    private Limit newLimit(String serviceName) {
+        Limit limit = new Limit(services.getService(serviceName).getLimit());
+        Gauge.builder("gateway.limit", limit, l -> l.limit)
+                .description("current concurrency limit")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        Gauge.builder("gateway.limit.inflight", limit.inFlight, AtomicInteger::get)
+                .description("requests in flight counted against the limit")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.limit.rejected", limit.rejected, LongAdder::sum)
+                .description("requests rejected by the concurrency limit")
+                .tag("service", serviceName).tag("priority", "normal")
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.limit.rejected", limit.rejectedPriority, LongAdder::sum)
+                .description("requests rejected by the concurrency limit")
+                .tag("service", serviceName).tag("priority", "high")
+                .register(meterRegistry);
+        return limit;
+    }
+
+    // one admitted request, exactly one of onSuccess, onDropped and onIgnore has to be called when it is done
+    // only requests that reached the upstream feed the limit, a cache hit or a coalesced follower says nothing
+    // about upstream latency and just gives its slot back
+    public static final class Permit {
+        private static final Permit UNLIMITED = new Permit(null);
+
+        private final Limit limit;
+        // the last upstream attempt's time, 0 while none was made
+        private volatile long rtt;
+
+        private Permit(Limit limit) {
+            this.limit = limit;
+        }
+
+        // an upstream attempt answered or failed after rttNanos, measured around the exchange only,
+        // so coalescer waits, cache lookups and retry backoff stay out of the sample
+        public void onUpstream(long rttNanos) {
+            if (limit != null) {
+                rtt = Math.max(1, rttNanos);
+            }
+        }
+
+        public void onSuccess() {
+            if (limit != null) {
+                if (rtt > 0) {
+                    limit.release(rtt, false);
+                } else {
+                    onIgnore();
+                }
+            }
+        }
+
+        // timed out or failed, the limit backs off
+        public void onDropped() {
+            if (limit != null) {
+                if (rtt > 0) {
+                    limit.release(rtt, true);
+                } else {
+                    onIgnore();
+                }
+            }
+        }
+
+        // never reached the upstream (e.g. open circuit), says nothing about its latency
+        public void onIgnore() {
+            if (limit != null) {
+                limit.inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private static final class Limit {
+        private static final double DROP_FACTOR = 0.9;
+
+        private final ServicesProperties.LimitProps props;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder rejectedPriority = new LongAdder();
+        // updates are serialized, a sample that finds the lock taken is queued for the thread holding it
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+        private volatile double limit;
+        private double longRtt;
+
+        private Limit(ServicesProperties.LimitProps props) {
+            this.props = props;
+            this.limit = props.getInitialLimit();
+        }
+
+        private boolean tryAcquire(boolean priority) {
+            double current = limit;
+            int ceiling = (int) (priority ? current : current * (1 - props.getPriorityReserve()));
+            ceiling = Math.max(1, ceiling);
+            int now;
+            do {
+                now = inFlight.get();
+                if (now >= ceiling) {
+                    return false;
+                }
+            } while (!inFlight.compareAndSet(now, now + 1));
+            return true;
+        }
+
+        private void release(long rtt, boolean dropped) {
+            int inFlightBefore = inFlight.getAndDecrement();
+            samples.add(new Sample(rtt, inFlightBefore, dropped));
+            // the holder looks at the queue again after unlocking, so a sample queued meanwhile is never stranded
+            while (!samples.isEmpty() && lock.tryLock()) {
+                try {
+                    Sample sample;
+                    while ((sample = samples.poll()) != null) {
+                        update(sample.rtt(), sample.inFlightBefore(), sample.dropped());
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void update(long rtt, int inFlightBefore, boolean dropped) {
+            if (dropped) {
+                limit = clamp(limit * DROP_FACTOR);
+                return;
+            }
+            if (longRtt == 0) {
+                longRtt = rtt;
+            } else {
+                longRtt += (rtt - longRtt) / props.getWindow();
+            }
+            // latency dropped well below the average, e.g. after a recovery: let the average catch up faster
+            if (longRtt / rtt > 2) {
+                longRtt *= 0.95;
+            }
+            // far below the limit the latency says nothing about it
+            if (inFlightBefore < limit / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, props.getTolerance() * longRtt / rtt));
+            double estimate = limit * gradient + Math.sqrt(limit);
+            limit = clamp(limit * (1 - props.getSmoothing()) + estimate * props.getSmoothing());
+        }
+
+        private double clamp(double value) {
+            return Math.max(props.getMinLimit(), Math.min(props.getMaxLimit(), value));
+        }
+    }
+
+    private record Sample(long rtt, int inFlightBefore, boolean dropped) {
+    }
+}
@@ -0,0 +1,195 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import lombok.RequiredArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// active health checks: every round probes all instances of a service at once
+// over a non-blocking client, so one hung instance only costs its own timeout
+@Component
+@RequiredArgsConstructor
+public class HealthCheckService {
+    private static final Logger log = LoggerFactory.getLogger(HealthCheckService.class);
+
+    private final ServicesProperties services;
+    private final ServiceDiscoveryManager serviceDiscovery;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, CloseableHttpAsyncClient> clients = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        services.getServices().forEach((serviceName, props) -> {
+            clients.put(serviceName, buildClient(props));
+            // first round right away, spread only by the jitter
+            long initialDelayMs = (long) (props.getHealthCheckInterval() * 1000L * props.getHealthCheckJitter()
+                    * ThreadLocalRandom.current().nextDouble());
+            taskScheduler.schedule(() -> runRound(serviceName, props), Instant.now().plusMillis(initialDelayMs));
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        clients.values().forEach(client -> client.close(CloseMode.IMMEDIATE));
+    }
+
+    private CloseableHttpAsyncClient buildClient(ServicesProperties.ServiceProps props) {
+        Timeout timeout = Timeout.ofMilliseconds(props.getHealthCheckTimeout());
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(1).build())
+                .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+                        .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                .setConnectTimeout(timeout)
+                                .setSocketTimeout(timeout)
+                                .build())
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(timeout)
+                        .setResponseTimeout(timeout)
+                        .build())
+                .build();
+        client.start();
+        return client;
+    }
+
+    // next round starts interval (+- jitter) after the previous one completed
+    private void scheduleRound(String serviceName, ServicesProperties.ServiceProps props) {
+        if (!running) {
+            return;
+        }
+        long intervalMs = props.getHealthCheckInterval() * 1000L;
+        double jitter = props.getHealthCheckJitter();
+        long delayMs = intervalMs + (long) (intervalMs * jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1));
+        taskScheduler.schedule(() -> runRound(serviceName, props), Instant.now().plusMillis(Math.max(0, delayMs)));
+    }
+
+    private void runRound(String serviceName, ServicesProperties.ServiceProps props) {
+        List<ServiceInstance> instances = serviceDiscovery.getInstances(serviceName);
+        if (!running || instances.isEmpty()) {
+            scheduleRound(serviceName, props);
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(instances.size());
+        for (ServiceInstance instance : instances) {
+            probe(serviceName, props, instance, () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    scheduleRound(serviceName, props);
+                }
+            });
+        }
+    }
+
+    private void probe(String serviceName, ServicesProperties.ServiceProps props, ServiceInstance instance,
+                       Runnable onDone) {
+        SimpleHttpRequest request = SimpleRequestBuilder.get(instance.getUrl() + props.getHealthCheckPath()).build();
+        long start = System.nanoTime();
+        try {
+            clients.get(serviceName).execute(SimpleRequestProducer.create(request), SimpleResponseConsumer.create(),
+                    new FutureCallback<>() {
+                        @Override
+                        public void completed(SimpleHttpResponse response) {
+                            boolean healthy = response.getCode() >= 200 && response.getCode() < 300;
+                            finish(healthy, healthy ? null : "status " + response.getCode());
+                        }
+
+                        @Override
+                        public void failed(Exception e) {
+                            finish(false, e.getMessage());
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            finish(false, "cancelled");
+                        }
+
+                        private void finish(boolean healthy, String reason) {
+                            try {
+                                recordProbe(serviceName, instance, healthy, System.nanoTime() - start);
+                                onResult(serviceName, props, instance, healthy, reason);
+                            } finally {
+                                onDone.run();
+                            }
+                        }
+                    });
+        } catch (Exception e) {
+            // client already shut down
+            onDone.run();
+        }
+    }
+
+    private void onResult(String serviceName, ServicesProperties.ServiceProps props, ServiceInstance instance,
+                          boolean healthy, String reason) {
+        if (healthy) {
+            instance.consecutiveProbeFailures().set(0);
+            int successes = instance.consecutiveProbeSuccesses().incrementAndGet();
+            if (!instance.isHealthy() && successes >= props.getHealthyThreshold()) {
+                serviceDiscovery.markInstanceAsHealthy(serviceName, instance.getUrl());
+                recordTransition(serviceName, instance, "healthy");
+            }
+        } else {
+            instance.consecutiveProbeSuccesses().set(0);
+            int failures = instance.consecutiveProbeFailures().incrementAndGet();
+            log.debug("ServiceDiscovery: {} instance {} health check failed ({} in a row): {}",
+                    serviceName, instance, failures, reason);
+            if (instance.isHealthy() && failures >= props.getUnhealthyThreshold()) {
+                serviceDiscovery.markInstanceAsFailed(serviceName, instance.getUrl());
+                recordTransition(serviceName, instance, "unhealthy");
+            }
+        }
+    }
+
+    private void recordProbe(String serviceName, ServiceInstance instance, boolean healthy, long latencyNanos) {
+        Timer.builder("gateway.health.probe")
+                .description("active health check probe latency")
+                .tag("service", serviceName)
+                .tag("instance", instance.getUrl())
+                .tag("outcome", healthy ? "success" : "failure")
+                .register(meterRegistry)
+                .record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void recordTransition(String serviceName, ServiceInstance instance, String to) {
+        Counter.builder("gateway.health.transitions")
+                .description("instance state changes decided by health checks")
+                .tag("service", serviceName)
+                .tag("instance", instance.getUrl())
+                .tag("to", to)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,94 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// hedge delay per service: the configured percentile over a ring of recent upstream latencies,
+// recomputed every RECOMPUTE_EVERY samples so the request path only reads a volatile
+@Component
+@RequiredArgsConstructor
+public class HedgingPolicy {
+    private static final int RING_SIZE = 1024;
+    private static final int RECOMPUTE_EVERY = 128;
+
+    private final ServicesProperties services;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, LatencyRing> rings = new ConcurrentHashMap<>();
+
+    public void record(String serviceName, long latencyNanos) {
+        LatencyRing ring = ring(serviceName);
+        if (ring.props.getPercentile() <= 0) {
+            return;
+        }
+        long index = ring.written.getAndIncrement();
+        ring.samples.set((int) (index % RING_SIZE), latencyNanos);
+        if ((index + 1) % RECOMPUTE_EVERY == 0) {
+            ring.recompute(Math.min(index + 1, RING_SIZE));
+        }
+    }
+
+    public long delayMillis(String serviceName) {
+        return ring(serviceName).delayMillis;
+    }
+
+    public void onHedgeWin(String serviceName) {
+        ring(serviceName).wins.increment();
+    }
+
+    private LatencyRing ring(String serviceName) {
+        LatencyRing ring = rings.get(serviceName);
+        return ring != null ? ring : rings.computeIfAbsent(serviceName, this::newRing);
+    }
+
+    private LatencyRing newRing(String serviceName) {
+        LatencyRing ring = new LatencyRing(services.getService(serviceName).getHedge());
+        Gauge.builder("gateway.hedge.delay", ring, r -> r.delayMillis)
+                .description("current hedge delay")
+                .baseUnit("milliseconds")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.hedge.wins", ring.wins, LongAdder::sum)
+                .description("requests answered by the hedged attempt")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        return ring;
+    }
+
+    private static final class LatencyRing {
+        private final ServicesProperties.HedgeProps props;
+        private final AtomicLongArray samples = new AtomicLongArray(RING_SIZE);
+        private final AtomicLong written = new AtomicLong();
+        private final LongAdder wins = new LongAdder();
+        private volatile long delayMillis;
+
+        private LatencyRing(ServicesProperties.HedgeProps props) {
+            this.props = props;
+            this.delayMillis = Math.max(props.getMinDelay(), props.getDelay());
+        }
+
+        private void recompute(long count) {
+            long[] sorted = new long[(int) count];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = samples.get(i);
+            }
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(props.getPercentile() / 100.0 * sorted.length) - 1;
+            long percentile = TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, Math.min(rank, sorted.length - 1))]);
+            delayMillis = Math.max(props.getMinDelay(), percentile);
+        }
+    }
+}
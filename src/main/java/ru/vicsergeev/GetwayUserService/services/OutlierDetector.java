@@ -0,0 +1,115 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import lombok.RequiredArgsConstructor;
+
+import java.time.Instant;
+
+// passive outlier detection: every proxied response feeds it, instances that keep
+// answering 5xx, fail at the connection level or run far slower than their peers
+// are ejected from the balancing snapshot right away instead of at the next health check
+@Component
+@RequiredArgsConstructor
+public class OutlierDetector {
+    private static final Logger log = LoggerFactory.getLogger(OutlierDetector.class);
+
+    private final ServicesProperties services;
+    private final ServiceDiscoveryManager serviceDiscovery;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+
+    // upstream answered, any status
+    public void onResponse(ServiceInstance instance, int status, long latencyNanos) {
+        ServicesProperties.OutlierProps props = services.getService(instance.getServiceName()).getOutlier();
+        if (!props.isEnabled()) {
+            return;
+        }
+        instance.consecutiveGatewayErrors().set(0);
+
+        if (status >= 500) {
+            if (instance.consecutive5xx().incrementAndGet() >= props.getConsecutive5xx()) {
+                eject(instance, props, "5xx");
+            }
+            return;
+        }
+        instance.consecutive5xx().set(0);
+
+        if (isSlow(instance, props, latencyNanos)) {
+            if (instance.consecutiveSlow().incrementAndGet() >= props.getConsecutiveSlow()) {
+                eject(instance, props, "latency");
+            }
+        } else {
+            instance.consecutiveSlow().set(0);
+        }
+    }
+
+    // no response at all: connect failure, reset, timeout
+    public void onGatewayError(ServiceInstance instance) {
+        ServicesProperties.OutlierProps props = services.getService(instance.getServiceName()).getOutlier();
+        if (!props.isEnabled()) {
+            serviceDiscovery.markInstanceAsFailed(instance.getServiceName(), instance.getUrl());
+            instance.resetProbeStreaks();
+            return;
+        }
+        if (instance.consecutiveGatewayErrors().incrementAndGet() >= props.getConsecutiveGatewayErrors()) {
+            eject(instance, props, "gateway-error");
+        }
+    }
+
+    // compares the sample with the average latency of the other available instances
+    private boolean isSlow(ServiceInstance instance, ServicesProperties.OutlierProps props, long latencyNanos) {
+        if (latencyNanos < props.getLatencyFloor() * 1_000_000L) {
+            return false;
+        }
+        ServiceInstance[] peers = serviceDiscovery.availableSnapshot(instance.getServiceName());
+        double sum = 0;
+        int count = 0;
+        for (ServiceInstance peer : peers) {
+            double peerLatency = peer.getLatencyEwmaNanos();
+            if (peer != instance && peerLatency > 0) {
+                sum += peerLatency;
+                count++;
+            }
+        }
+        return count > 0 && latencyNanos > props.getLatencyFactor() * (sum / count);
+    }
+
+    private void eject(ServiceInstance instance, ServicesProperties.OutlierProps props, String reason) {
+        long now = System.currentTimeMillis();
+        // multiplier decays once the instance stayed in rotation for a full max ejection time
+        if (instance.getEjectionCount() > 0 && now - instance.getLastEjectionEndMillis() > props.getMaxEjectionTime()) {
+            instance.setEjectionCount(0);
+        }
+        if (!serviceDiscovery.tryEject(instance, props.getMaxEjectionPercent())) {
+            return;
+        }
+        int ejections = instance.getEjectionCount() + 1;
+        instance.setEjectionCount(ejections);
+        long ejectionMs = Math.min(props.getMaxEjectionTime(),
+                props.getBaseEjectionTime() << Math.min(ejections - 1, 20));
+        instance.setLastEjectionEndMillis(now + ejectionMs);
+        instance.consecutive5xx().set(0);
+        instance.consecutiveGatewayErrors().set(0);
+        instance.consecutiveSlow().set(0);
+        instance.resetProbeStreaks();
+
+        log.warn("OutlierDetector: ejected {} instance {} for {} ms, reason: {}, ejection #{}",
+                instance.getServiceName(), instance, ejectionMs, reason, ejections);
+        Counter.builder("gateway.outlier.ejections")
+                .description("instances ejected by passive outlier detection")
+                .tag("service", instance.getServiceName())
+                .tag("instance", instance.getUrl())
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+
+        taskScheduler.schedule(() -> serviceDiscovery.returnFromEjection(instance), Instant.ofEpochMilli(now + ejectionMs));
+    }
+}
@@ -1,28 +1,54 @@
 package ru.vicsergeev.GetwayUserService.services;
 
-import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.StreamingHttpOutputMessage;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
-import org.apache.hc.client5.http.config.RequestConfig;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
-import org.apache.hc.core5.util.Timeout;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.observability.TraceHeaders;
+import ru.vicsergeev.GetwayUserService.observability.UpstreamMetrics;
+import ru.vicsergeev.GetwayUserService.routing.Route;
 
-import java.util.Enumeration;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by Victor 31.10.2025
@@ -32,135 +58,617 @@ import java.util.Enumeration;
 @RequiredArgsConstructor
 public class ProxyService {
     private static final Logger log = LoggerFactory.getLogger(ProxyService.class);
-    private final ServicesProperties services;
     private final ServiceDiscoveryManager serviceDiscovery;
-    private RestTemplate restTemplate;
+    private final BufferPool bufferPool;
+    private final UpstreamClients upstreamClients;
+    private final OutlierDetector outlierDetector;
+    private final ResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final RetryBudget retryBudget;
+    private final HedgingPolicy hedgingPolicy;
+    private final TaskScheduler taskScheduler;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final UpstreamMetrics upstreamMetrics;
+    private final ResponseCompression responseCompression;
+    private final TrustedProxies trustedProxies;
 
-    @PostConstruct
-    public void init() {
-        this.restTemplate = buildRestTemplate();
+    // path is the upstream path, already rewritten by the route
+    // the concurrency limit is checked before the circuit breaker, so shed load is not counted as failures
+    public ResponseEntity<String> forward(Route route, String path, String method, String body, HttpServletRequest request) {
+        ConcurrencyLimiter.Permit permit = acquire(route);
+        if (permit == null) {
+            return overloaded(route);
+        }
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(route.getCircuitBreaker());
+        try {
+            ResponseEntity<String> response = circuitBreaker.executeSupplier(
+                    () -> forwardWithFailover(route, path, method, body, request, permit));
+            permit.onSuccess();
+            return UpstreamResponses.filter(response, route.getResponseHeaders());
+        } catch (Exception e) {
+            release(permit, e);
+            return fallback(route, path, e);
+        }
+    }
+
+    public CompletableFuture<ResponseEntity<String>> forwardAsync(Route route, String path, String method, String body,
+                                                                  HttpServletRequest request) {
+        ConcurrencyLimiter.Permit permit = acquire(route);
+        if (permit == null) {
+            return CompletableFuture.completedFuture(overloaded(route));
+        }
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(route.getCircuitBreaker());
+        return circuitBreaker.executeCompletionStage(
+                        () -> forwardAsyncWithFailover(route, path, method, body, request, permit))
+                .toCompletableFuture()
+                .handle((response, t) -> {
+                    if (t == null) {
+                        permit.onSuccess();
+                        return UpstreamResponses.filter(response, route.getResponseHeaders());
+                    }
+                    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                    release(permit, cause);
+                    return fallback(route, path, cause);
+                });
+    }
+
+    public void stream(Route route, String path, String method, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        ConcurrencyLimiter.Permit permit = acquire(route);
+        if (permit == null) {
+            writeOverloaded(route, response);
+            return;
+        }
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(route.getCircuitBreaker());
+        try {
+            circuitBreaker.executeRunnable(() -> streamWithFailover(route, path, method, request, response, permit));
+            permit.onSuccess();
+        } catch (Exception e) {
+            release(permit, e);
+            streamFallback(route, path, response, e);
+        }
     }
 
-    private RestTemplate buildRestTemplate() {
-        // timeout from services config
-        int connectTimeout = services.getUser().getConnectTimeout();
-        int responseTimeout = services.getUser().getResponseTimeout();
+    private ConcurrencyLimiter.Permit acquire(Route route) {
+        return concurrencyLimiter.tryAcquire(route.getServiceName(), route.isPriority());
+    }
 
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
-                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeout))
-                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeout))
-                .build();
+    // an open circuit never reached the upstream, anything else is a drop the limit backs off from
+    private static void release(ConcurrencyLimiter.Permit permit, Throwable t) {
+        if (t instanceof CallNotPermittedException) {
+            permit.onIgnore();
+        } else {
+            permit.onDropped();
+        }
+    }
 
-        CloseableHttpClient httpClient = HttpClients.custom()
-                .setDefaultRequestConfig(requestConfig)
-                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create().build())
-                .build();
+    private ResponseEntity<String> forwardWithFailover(Route route, String path, String method, String body,
+                                                       HttpServletRequest request, ConcurrencyLimiter.Permit permit) {
+        HttpHeaders headers = new HttpHeaders();
+        upstreamHeaders(route, request, headers);
+        String query = UpstreamRequests.queryString(request);
+        ResponseCache.Lookup cached = lookupCache(route, path, query, method, headers);
+        if (cached != null && cached.isFresh()) {
+            return responseCache.cachedResponse(cached);
+        }
 
-        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
-        return new RestTemplate(factory);
+        String pathAndQuery = path + query;
+        String hashKey = route.hashKey(path, request);
+        // hedging needs cancellable attempts and only the async client speaks h2c,
+        // so hedged GETs and h2c services go through the async client even here
+        boolean viaAsync = route.isH2c() || isHedged(route, method);
+        // only the call that goes upstream reaches the supplier, a coalesced follower waits for it instead
+        ResponseEntity<String> response = requestCoalescer.execute(route.getServiceName(),
+                coalescingKey(route, method, pathAndQuery, headers),
+                () -> viaAsync ? await(forwardToInstancesAsync(route, pathAndQuery, method, body, headers, hashKey, permit))
+                        : forwardToInstances(route, pathAndQuery, method, body, headers, hashKey, permit));
+        return afterResponse(cached, route, path, method, response);
     }
 
-    @CircuitBreaker(name = "userService", fallbackMethod = "fallbackUserService")
-    public ResponseEntity<String> forwardToUserService(String path, String method, String body,
-                                                       Enumeration<String> headerNames, HttpServletRequest request) {
+    // retries leave the hash key out, the key's instance is the one that just failed
+    private ResponseEntity<String> forwardToInstances(Route route, String pathAndQuery, String method, String body,
+                                                      HttpHeaders headers, String hashKey,
+                                                      ConcurrencyLimiter.Permit permit) {
+        String serviceName = route.getServiceName();
+        String displayName = route.getDisplayName();
         String baseUrl = null;
         int retryCount = 0;
-        int maxRetries = serviceDiscovery.getAvailableInstances("user").size();
+        int maxRetries = serviceDiscovery.getAvailableInstanceCount(serviceName);
+        retryBudget.onRequest(serviceName);
 
         while (retryCount < maxRetries) {
             try {
-                baseUrl = serviceDiscovery.getNextInstance("user");
-                String url = baseUrl + "/users" + path +getQueryString(request);
-                log.info("ProxyService: forwarding {} request to USerService: {}", method, url);
-
-                ResponseEntity<String> response = forward(url, method, body, headerNames, request);
-                log.info("ProxyService: UserService responded with status: {}", response.getStatusCode());
+                ServiceInstance instance = serviceDiscovery.nextInstance(serviceName, retryCount == 0 ? hashKey : null);
+                baseUrl = instance.getUrl();
+                String url = baseUrl + pathAndQuery;
+                ResponseEntity<String> response = exchange(instance, route.getRestTemplate(), url, method, body, headers,
+                        permit);
+                if (response.getStatusCode().is5xxServerError()) {
+                    // counted by the outlier detector already, try the next instance
+                    throw HttpServerErrorException.create(response.getStatusCode(), "upstream error",
+                            response.getHeaders(), null, null);
+                }
                 return response;
             } catch (Exception e) {
-                log.warn("ProxyService: UserService instance {} failed: {}", baseUrl, e.getMessage());
-                serviceDiscovery.markInstanceAsFailed("user", baseUrl);
+                log.warn("ProxyService: {} instance {} failed: {}", displayName, baseUrl, e.getMessage());
                 retryCount++;
 
-                if (retryCount >= maxRetries) {
-                    throw new RuntimeException("all UserService isntances are failed", e);
+                if (retryCount >= maxRetries || !retryBudget.tryAcquire(serviceName, "retry")) {
+                    throw new RuntimeException("all " + displayName + " isntances are failed", e);
+                }
+                sleepBackoff(serviceName, retryCount);
+            }
+        }
+
+        throw new RuntimeException("Failed to forward request to " + displayName + " after retries");
+    }
+
+    // async mode: everything taken from the servlet request is captured up front,
+    // retries run from the http client callback with the same round robin and failover rules
+    private CompletableFuture<ResponseEntity<String>> forwardAsyncWithFailover(Route route, String path, String method,
+                                                                               String body, HttpServletRequest request,
+                                                                               ConcurrencyLimiter.Permit permit) {
+        HttpHeaders headers = new HttpHeaders();
+        upstreamHeaders(route, request, headers);
+        String query = UpstreamRequests.queryString(request);
+        ResponseCache.Lookup cached = lookupCache(route, path, query, method, headers);
+        if (cached != null && cached.isFresh()) {
+            return CompletableFuture.completedFuture(responseCache.cachedResponse(cached));
+        }
+
+        String pathAndQuery = path + query;
+        String hashKey = route.hashKey(path, request);
+        return requestCoalescer.executeAsync(route.getServiceName(), coalescingKey(route, method, pathAndQuery, headers),
+                        () -> forwardToInstancesAsync(route, pathAndQuery, method, body, headers, hashKey, permit))
+                .thenApply(response -> afterResponse(cached, route, path, method, response));
+    }
+
+    private CompletableFuture<ResponseEntity<String>> forwardToInstancesAsync(Route route, String pathAndQuery,
+                                                                              String method, String body,
+                                                                              HttpHeaders headers, String hashKey,
+                                                                              ConcurrencyLimiter.Permit permit) {
+        String serviceName = route.getServiceName();
+        AsyncForward forward = new AsyncForward(route, pathAndQuery, method.toUpperCase(), body, headers, hashKey,
+                serviceDiscovery.getAvailableInstanceCount(serviceName), permit);
+        retryBudget.onRequest(serviceName);
+
+        if (forward.maxAttempts == 0) {
+            forward.result.completeExceptionally(
+                    new RuntimeException("Failed to forward request to " + route.getDisplayName() + " after retries"));
+            return forward.result;
+        }
+        attemptAsync(forward, false);
+        if (forward.maxAttempts > 1 && isHedged(route, method)) {
+            forward.hedgeTimer = taskScheduler.schedule(() -> {
+                if (!forward.result.isDone() && forward.attempts.get() < forward.maxAttempts
+                        && retryBudget.tryAcquire(serviceName, "hedge")) {
+                    attemptAsync(forward, true);
                 }
+            }, Instant.now().plusMillis(hedgingPolicy.delayMillis(serviceName)));
+        }
+        // first answer wins, whatever is still in flight is cancelled
+        forward.result.whenComplete((response, error) -> {
+            ScheduledFuture<?> hedgeTimer = forward.hedgeTimer;
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+            forward.inFlight.forEach(Cancellable::cancel);
+        });
+        return forward.result;
+    }
+
+    private boolean isHedged(Route route, String method) {
+        return route.isHedgeEnabled() && method.equalsIgnoreCase("GET");
+    }
+
+    private static ResponseEntity<String> await(CompletableFuture<ResponseEntity<String>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+    }
+
+    private void sleepBackoff(String serviceName, int retry) {
+        long backoff = retryBudget.backoff(serviceName, retry);
+        if (backoff > 0) {
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted during retry backoff", e);
+            }
+        }
+    }
+
+    // GETs of routes with caching enabled; a stale entry turns the upstream call into a revalidation
+    private ResponseCache.Lookup lookupCache(Route route, String path, String query, String method, HttpHeaders headers) {
+        if (!route.isCacheEnabled() || !method.equalsIgnoreCase("GET")) {
+            return null;
+        }
+        ResponseCache.Lookup cached = responseCache.lookup(route.getServiceName(), path, query, headers);
+        if (cached != null && !cached.isFresh()) {
+            responseCache.addValidators(cached, headers);
+        }
+        return cached;
+    }
+
+    // null when the request is not coalesced
+    private String coalescingKey(Route route, String method, String pathAndQuery, HttpHeaders headers) {
+        if (!route.isCoalescingEnabled() || !method.equalsIgnoreCase("GET")) {
+            return null;
+        }
+        return requestCoalescer.key(route.getServiceName(), pathAndQuery, headers);
+    }
+
+    private ResponseEntity<String> afterResponse(ResponseCache.Lookup cached, Route route, String path,
+                                                 String method, ResponseEntity<String> response) {
+        if (cached != null) {
+            return responseCache.complete(cached, response);
+        }
+        if (!isSafe(method)) {
+            responseCache.invalidate(route.getServiceName(), path, response.getStatusCode().value());
+        }
+        return response;
+    }
+
+    // GET, HEAD and OPTIONS leave the resource as it is, any other method invalidates its cached GETs
+    private static boolean isSafe(String method) {
+        return method.equalsIgnoreCase("GET") || method.equalsIgnoreCase("HEAD") || method.equalsIgnoreCase("OPTIONS");
+    }
+
+    private void attemptAsync(AsyncForward forward, boolean hedge) {
+        Route route = forward.route;
+        CloseableHttpAsyncClient asyncHttpClient;
+        ServiceInstance instance;
+        try {
+            asyncHttpClient = upstreamClients.asyncClient(route.getServiceName());
+            instance = pickInstance(forward);
+        } catch (Exception e) {
+            if (forward.outstanding.get() == 0) {
+                forward.result.completeExceptionally(e);
+            }
+            return;
+        }
+        forward.attempts.incrementAndGet();
+        forward.outstanding.incrementAndGet();
+        forward.lastInstance = instance;
+        String baseUrl = instance.getUrl();
+        String url = baseUrl + forward.pathAndQuery;
+
+        SimpleHttpRequest upstreamRequest = SimpleRequestBuilder.create(forward.method).setUri(url).build();
+        if (route.getAsyncRequestConfig() != null) {
+            upstreamRequest.setConfig(route.getAsyncRequestConfig());
+        }
+        forward.headers.forEach((name, values) -> values.forEach(value -> upstreamRequest.addHeader(name, value)));
+        // hedges run side by side off the same headers, each gets its own span id here
+        String traceparent = TraceHeaders.attemptTraceparent(forward.headers);
+        if (traceparent != null) {
+            upstreamRequest.setHeader(TraceHeaders.TRACEPARENT, traceparent);
+        }
+        if (forward.body != null) {
+            MediaType contentType = forward.headers.getContentType();
+            upstreamRequest.setBody(forward.body.getBytes(StandardCharsets.UTF_8),
+                    contentType != null ? ContentType.parseLenient(contentType.toString()) : ContentType.TEXT_PLAIN);
+        }
+
+        instance.onRequestStart();
+        long start = System.nanoTime();
+        // cancelling a finished attempt still reaches its connection: an h2 connection is shared by all
+        // streams, so the winner must not be cancelled or every request on it fails
+        AtomicBoolean finished = new AtomicBoolean();
+        Future<SimpleHttpResponse> attempt = asyncHttpClient.execute(SimpleRequestProducer.create(upstreamRequest),
+                SimpleResponseConsumer.create(), new FutureCallback<>() {
+                    @Override
+                    public void completed(SimpleHttpResponse upstreamResponse) {
+                        finished.set(true);
+                        long latency = System.nanoTime() - start;
+                        instance.onRequestEnd(latency);
+                        if (!forward.result.isDone()) {
+                            forward.permit.onUpstream(latency);
+                        }
+                        outlierDetector.onResponse(instance, upstreamResponse.getCode(), latency);
+                        upstreamMetrics.record(instance, upstreamResponse.getCode(), latency);
+                        hedgingPolicy.record(route.getServiceName(), latency);
+                        int remaining = forward.outstanding.decrementAndGet();
+                        try {
+                            ResponseEntity<String> response = toResponseEntity(upstreamResponse);
+                            if (forward.result.complete(response) && hedge) {
+                                hedgingPolicy.onHedgeWin(route.getServiceName());
+                            }
+                        } catch (Exception e) {
+                            onFailure(e, remaining);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        finished.set(true);
+                        long latency = System.nanoTime() - start;
+                        instance.onRequestEnd(latency);
+                        int remaining = forward.outstanding.decrementAndGet();
+                        if (forward.result.isDone()) {
+                            // lost the race and was torn down, not the instance's fault
+                            return;
+                        }
+                        forward.permit.onUpstream(latency);
+                        outlierDetector.onGatewayError(instance);
+                        upstreamMetrics.record(instance, 0, latency);
+                        onFailure(e, remaining);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        failed(new CancellationException("upstream request cancelled"));
+                    }
+
+                    // only the last attempt still running decides whether to retry
+                    private void onFailure(Exception e, int remaining) {
+                        log.warn("ProxyService: {} instance {} failed: {}", route.getDisplayName(), baseUrl, e.getMessage());
+                        if (forward.result.isDone() || remaining > 0) {
+                            return;
+                        }
+                        int attempts = forward.attempts.get();
+                        if (attempts >= forward.maxAttempts || !retryBudget.tryAcquire(route.getServiceName(), "retry")) {
+                            forward.result.completeExceptionally(
+                                    new RuntimeException("all " + route.getDisplayName() + " isntances are failed", e));
+                            return;
+                        }
+                        long backoff = retryBudget.backoff(route.getServiceName(), attempts);
+                        if (backoff > 0) {
+                            taskScheduler.schedule(() -> attemptAsync(forward, false), Instant.now().plusMillis(backoff));
+                        } else {
+                            attemptAsync(forward, false);
+                        }
+                    }
+                });
+        forward.inFlight.add(() -> !finished.get() && attempt.cancel(true));
+    }
+
+    // retries and hedges prefer an instance other than the previous attempt's, only the first one goes by hash key
+    private ServiceInstance pickInstance(AsyncForward forward) {
+        String serviceName = forward.route.getServiceName();
+        ServiceInstance previous = forward.lastInstance;
+        ServiceInstance instance = serviceDiscovery.nextInstance(serviceName, previous == null ? forward.hashKey : null);
+        for (int i = 1; instance == previous && i < forward.maxAttempts; i++) {
+            instance = serviceDiscovery.nextInstance(serviceName);
+        }
+        return instance;
+    }
+
+    // 5xx raises so the next instance is tried, 4xx is the client's problem and goes back as is
+    private ResponseEntity<String> toResponseEntity(SimpleHttpResponse upstreamResponse) {
+        HttpHeaders headers = new HttpHeaders();
+        for (Header header : upstreamResponse.getHeaders()) {
+            // dropped here already, so the response needs no second copy on the way out
+            if (!UpstreamRequests.HOP_BY_HOP.contains(header.getName())) {
+                headers.add(header.getName(), header.getValue());
             }
         }
+        byte[] bodyBytes = upstreamResponse.getBodyBytes();
 
-        throw new RuntimeException("Failed to forward request to UserService after retries");
+        HttpStatusCode status = HttpStatusCode.valueOf(upstreamResponse.getCode());
+        if (status.is5xxServerError()) {
+            throw HttpServerErrorException.create(status, upstreamResponse.getReasonPhrase(), headers,
+                    bodyBytes, null);
+        }
+        return new ResponseEntity<>(UpstreamResponses.body(bodyBytes, headers), headers, status);
+    }
+
+    // one client request in async mode, shared by its attempts (retries and hedges)
+    private static final class AsyncForward {
+        private final Route route;
+        private final String pathAndQuery;
+        private final String method;
+        private final String body;
+        private final HttpHeaders headers;
+        // null when the service does not hash or the request has no key
+        private final String hashKey;
+        private final int maxAttempts;
+        private final ConcurrencyLimiter.Permit permit;
+        private final CompletableFuture<ResponseEntity<String>> result = new CompletableFuture<>();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final Set<Cancellable> inFlight = ConcurrentHashMap.newKeySet();
+        private volatile ServiceInstance lastInstance;
+        private volatile ScheduledFuture<?> hedgeTimer;
+
+        private AsyncForward(Route route, String pathAndQuery, String method, String body, HttpHeaders headers,
+                             String hashKey, int maxAttempts, ConcurrencyLimiter.Permit permit) {
+            this.route = route;
+            this.pathAndQuery = pathAndQuery;
+            this.method = method;
+            this.body = body;
+            this.headers = headers;
+            this.hashKey = hashKey;
+            this.maxAttempts = maxAttempts;
+            this.permit = permit;
+        }
     }
 
-    @CircuitBreaker(name = "notificationService", fallbackMethod = "fallbackNotificationService")
-    public ResponseEntity<String> forwardToNotificationService(String path, String method, String body,
-                                                                Enumeration<String> headerNames, HttpServletRequest request) {
+    // streaming mode: bodies are never held in memory, so a request with a body
+    // can only be sent once - failover is possible only for bodyless methods
+    // or while nothing was written to the client yet
+    private void streamWithFailover(Route route, String path, String method, HttpServletRequest request,
+                                    HttpServletResponse response, ConcurrencyLimiter.Permit permit) {
+        String serviceName = route.getServiceName();
+        String displayName = route.getDisplayName();
+        HttpMethod httpMethod = HttpMethod.valueOf(method.toUpperCase());
+        boolean hasBody = httpMethod == HttpMethod.POST || httpMethod == HttpMethod.PUT || httpMethod == HttpMethod.PATCH;
         String baseUrl = null;
         int retryCount = 0;
-        int maxRetries = serviceDiscovery.getAvailableInstances("notification").size();
+        int maxRetries = hasBody ? 1 : serviceDiscovery.getAvailableInstanceCount(serviceName);
+        String hashKey = route.hashKey(path, request);
+        retryBudget.onRequest(serviceName);
 
         while (retryCount < maxRetries) {
             try {
-                baseUrl = serviceDiscovery.getNextInstance("notification");
-                String url = baseUrl + "/notifications" + path + getQueryString(request);
-                log.info("ProxyService: forwarding {} request to NotificationService: {}", method, url);
+                ServiceInstance instance = serviceDiscovery.nextInstance(serviceName, retryCount == 0 ? hashKey : null);
+                baseUrl = instance.getUrl();
+                String url = baseUrl + path + UpstreamRequests.queryString(request);
+                log.debug("ProxyService: streaming {} request to {}: {}", method, displayName, url);
 
-                ResponseEntity<String> response = forward(url, method, body, headerNames, request);
-                log.info("ProxyService: NotifictionService responded with status: {}", response.getStatusCode());
-                return response;
+                instance.onRequestStart();
+                long start = System.nanoTime();
+                try {
+                    streamExchange(route, path, url, httpMethod, hasBody, request, response);
+                } catch (RuntimeException e) {
+                    long latency = System.nanoTime() - start;
+                    instance.onRequestEnd(latency);
+                    permit.onUpstream(latency);
+                    outlierDetector.onGatewayError(instance);
+                    upstreamMetrics.record(instance, 0, latency);
+                    throw e;
+                }
+                long latency = System.nanoTime() - start;
+                instance.onRequestEnd(latency);
+                permit.onUpstream(latency);
+                outlierDetector.onResponse(instance, response.getStatus(), latency);
+                upstreamMetrics.record(instance, response.getStatus(), latency);
+                return;
             } catch (Exception e) {
-                log.warn("ProxyService: NotificationService instance {} failed: {}", baseUrl, e.getMessage());
-                serviceDiscovery.markInstanceAsFailed("notification", baseUrl);
+                log.warn("ProxyService: {} instance {} failed: {}", displayName, baseUrl, e.getMessage());
                 retryCount++;
 
-                if (retryCount >= maxRetries) {
-                    throw new RuntimeException("all NotificationService isntances are failed", e);
+                if (retryCount >= maxRetries || response.isCommitted()
+                        || !retryBudget.tryAcquire(serviceName, "retry")) {
+                    throw new RuntimeException("all " + displayName + " isntances are failed", e);
                 }
+                sleepBackoff(serviceName, retryCount);
             }
         }
 
-        throw new RuntimeException("Failed to forward request to NotificationService after retries");
+        throw new RuntimeException("Failed to stream request to " + displayName + " after retries");
     }
 
-    private ResponseEntity<String> forward(String url, String method, String body,
-                                           Enumeration<String> headerNames, HttpServletRequest request) {
-        if (restTemplate == null) {
-            throw new IllegalStateException("RestTemplate not initialized");
-        }
-        HttpHeaders headers = new HttpHeaders();
-        while (headerNames.hasMoreElements()) {
-            String name = headerNames.nextElement();
-            if (!name.equalsIgnoreCase("host") && !name.equalsIgnoreCase("content-length")) {
-                headers.add(name, request.getHeader(name));
+    private void streamExchange(Route route, String path, String url, HttpMethod method, boolean hasBody,
+                                HttpServletRequest request, HttpServletResponse response) {
+        route.getRestTemplate().execute(url, method, upstreamRequest -> {
+            upstreamHeaders(route, request, upstreamRequest.getHeaders());
+            if (hasBody && upstreamRequest instanceof StreamingHttpOutputMessage streamingRequest) {
+                long contentLength = request.getContentLengthLong();
+                if (contentLength >= 0) {
+                    upstreamRequest.getHeaders().setContentLength(contentLength);
+                }
+                streamingRequest.setBody(out -> bufferPool.transfer(request.getInputStream(), out));
+            }
+        }, upstreamResponse -> {
+            int status = upstreamResponse.getStatusCode().value();
+            response.setStatus(status);
+            if (!isSafe(method.name())) {
+                // before the body is relayed, a GET the client sends right after must not see the old entry
+                responseCache.invalidate(route.getServiceName(), path, status);
+            }
+            boolean compress = responseCompression.shouldCompress(route.getServiceName(),
+                    request.getHeader(HttpHeaders.ACCEPT_ENCODING), upstreamResponse.getHeaders());
+            UpstreamResponses.copyHeaders(upstreamResponse.getHeaders(), route.getResponseHeaders(), response);
+            if (compress) {
+                GZIPOutputStream out = ResponseCompression.gzip(response);
+                bufferPool.transfer(upstreamResponse.getBody(), out);
+                out.finish();
+            } else {
+                bufferPool.transfer(upstreamResponse.getBody(), response.getOutputStream());
             }
+            return null;
+        });
+    }
+
+    // client headers as the upstream should see them: end-to-end ones copied, forwarded added, route rules applied
+    private void upstreamHeaders(Route route, HttpServletRequest request, HttpHeaders headers) {
+        UpstreamRequests.copyHeaders(request, headers);
+        boolean trustedPeer = trustedProxies.isTrusted(request.getRemoteAddr());
+        if (route.isForwardedHeaders()) {
+            UpstreamRequests.addForwarded(request, headers, route.strippedPrefix(), trustedPeer);
+        } else if (!trustedPeer) {
+            UpstreamRequests.removeForwarded(headers);
         }
+        route.getRequestHeaders().apply(headers);
+    }
 
+    // one upstream call, every outcome is reported to the outlier detector
+    // the body is read as bytes, so an encoded one survives its way into the String
+    private ResponseEntity<String> exchange(ServiceInstance instance, RestTemplate restTemplate, String url,
+                                            String method, String body, HttpHeaders headers,
+                                            ConcurrencyLimiter.Permit permit) {
+        // retries are sequential, the shared headers can take each attempt's span id in turn
+        String traceparent = TraceHeaders.attemptTraceparent(headers);
+        if (traceparent != null) {
+            headers.set(TraceHeaders.TRACEPARENT, traceparent);
+        }
         HttpEntity<String> entity = body != null ? new HttpEntity<>(body, headers) : new HttpEntity<>(headers);
 
-        return switch (method.toUpperCase()) {
-            case "GET" -> restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-            case "POST" -> restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-            case "PUT" -> restTemplate.exchange(url, HttpMethod.PUT, entity, String.class);
-            case "DELETE" -> restTemplate.exchange(url, HttpMethod.DELETE, entity, String.class);
-            default -> ResponseEntity.status(405).body("method is not allowed");
+        HttpMethod httpMethod = switch (method.toUpperCase()) {
+            case "GET" -> HttpMethod.GET;
+            case "HEAD" -> HttpMethod.HEAD;
+            case "OPTIONS" -> HttpMethod.OPTIONS;
+            case "POST" -> HttpMethod.POST;
+            case "PUT" -> HttpMethod.PUT;
+            case "PATCH" -> HttpMethod.PATCH;
+            case "DELETE" -> HttpMethod.DELETE;
+            default -> null;
         };
+        if (httpMethod == null) {
+            return ResponseEntity.status(405).body("method is not allowed");
+        }
+
+        ResponseEntity<byte[]> response;
+        instance.onRequestStart();
+        long start = System.nanoTime();
+        try {
+            response = restTemplate.exchange(url, httpMethod, entity, byte[].class);
+        } catch (RuntimeException e) {
+            long latency = System.nanoTime() - start;
+            instance.onRequestEnd(latency);
+            permit.onUpstream(latency);
+            outlierDetector.onGatewayError(instance);
+            upstreamMetrics.record(instance, 0, latency);
+            throw e;
+        }
+        long latency = System.nanoTime() - start;
+        instance.onRequestEnd(latency);
+        permit.onUpstream(latency);
+        outlierDetector.onResponse(instance, response.getStatusCode().value(), latency);
+        upstreamMetrics.record(instance, response.getStatusCode().value(), latency);
+        hedgingPolicy.record(instance.getServiceName(), latency);
+        return new ResponseEntity<>(UpstreamResponses.body(response.getBody(), response.getHeaders()),
+                response.getHeaders(), response.getStatusCode());
+    }
+
+    private ResponseEntity<String> fallback(Route route, String path, Throwable t) {
+        log.warn("ProxyService: Circuit Breaker fallback for {} - path: {}, reason: {}", route.getDisplayName(), path, t != null ? t.getMessage() : "unknown error");
+        return ResponseEntity.status(503).body(route.getDisplayName() + " is unavailable: " + (t != null ? t.getMessage() : "unknown error"));
     }
 
-    private String getQueryString(HttpServletRequest request) {
-        String qeury = request.getQueryString();
-        return qeury != null ? "?" + qeury : "";
+    private ResponseEntity<String> overloaded(Route route) {
+        ServicesProperties.LimitProps props = concurrencyLimiter.props(route.getServiceName());
+        log.warn("ProxyService: {} is at its concurrency limit, request rejected", route.getDisplayName());
+        return ResponseEntity.status(props.getRejectStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(props.getRetryAfter()))
+                .body(route.getDisplayName() + " is overloaded");
     }
 
-    private ResponseEntity<String> fallbackUserService(String path, String method, String body,
-                                                       Enumeration<String> headerNames, HttpServletRequest request,
-                                                       Throwable t) {
-        log.warn("ProxyService: Circuit Breaker fallback for UserService - path: {}, reason: {}", path, t != null ? t.getMessage() : "unknown error");
-        return ResponseEntity.status(503).body("UserService is unavailable: " + (t != null ? t.getMessage() : "unknown error"));
+    private void writeOverloaded(Route route, HttpServletResponse response) throws IOException {
+        ResponseEntity<String> overloaded = overloaded(route);
+        response.setStatus(overloaded.getStatusCode().value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, overloaded.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getOutputStream().write(overloaded.getBody().getBytes(StandardCharsets.UTF_8));
     }
 
-    private ResponseEntity<String> fallbackNotificationService(String path, String method, String body,
-                                                               Enumeration<String> headerNames, HttpServletRequest request,
-                                                               Throwable t) {
-        log.warn("ProxyService: Circuit Breaker fallback for NotificationService - path: {}, reason: {}", path, t != null ? t.getMessage() : "unknown error");
-        return ResponseEntity.status(503).body("NotificationService is unavailable: " + (t != null ? t.getMessage() : "unknown error"));
+    private void streamFallback(Route route, String path, HttpServletResponse response, Throwable t) throws IOException {
+        log.warn("ProxyService: Circuit Breaker fallback for {} - path: {}, reason: {}", route.getDisplayName(), path, t != null ? t.getMessage() : "unknown error");
+        writeUnavailable(response, route.getDisplayName() + " is unavailable: " + (t != null ? t.getMessage() : "unknown error"));
+    }
+
+    private void writeUnavailable(HttpServletResponse response, String message) throws IOException {
+        if (response.isCommitted()) {
+            // part of upstream response already sent, nothing left but to drop the connection
+            return;
+        }
+        response.reset();
+        response.setStatus(503);
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getOutputStream().write(message.getBytes(StandardCharsets.UTF_8));
     }
 }
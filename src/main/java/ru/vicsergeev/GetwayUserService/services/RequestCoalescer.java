@@ -0,0 +1,152 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// single-flight: the first GET for a key goes upstream, identical requests arriving
+// while it is in flight wait for its result instead of sending their own
+@Component
+@RequiredArgsConstructor
+public class RequestCoalescer {
+    // conditional requests only match callers holding the same validators
+    private static final List<String> CONDITIONAL_HEADERS = List.of(
+            HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE);
+
+    private final ServicesProperties services;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, CompletableFuture<ResponseEntity<String>>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    // called for GETs of routes with coalescing enabled
+    public String key(String serviceName, String pathAndQuery, HttpHeaders headers) {
+        StringBuilder key = new StringBuilder(serviceName).append(' ').append(pathAndQuery);
+        for (String name : services.getService(serviceName).getCoalescing().getKeyHeaders()) {
+            appendHeader(key, headers, name);
+        }
+        for (String name : CONDITIONAL_HEADERS) {
+            appendHeader(key, headers, name);
+        }
+        // the upstream encodes for the client's Accept-Encoding, a gzip body must not reach a client without it
+        appendHeader(key, headers, HttpHeaders.ACCEPT_ENCODING);
+        return key.toString();
+    }
+
+    // null key runs the call directly
+    public ResponseEntity<String> execute(String serviceName, String key, Supplier<ResponseEntity<String>> call) {
+        if (key == null) {
+            return call.get();
+        }
+        CompletableFuture<ResponseEntity<String>> own = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<String>> shared = inFlight.putIfAbsent(key, own);
+        if (shared == null) {
+            try {
+                ResponseEntity<String> response = call.get();
+                own.complete(response);
+                return response;
+            } catch (RuntimeException e) {
+                own.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, own);
+            }
+        }
+
+        Stats serviceStats = stats.computeIfAbsent(serviceName, this::newStats);
+        serviceStats.joined.increment();
+        try {
+            return shared.get(services.getService(serviceName).getCoalescing().getMaxWait(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            serviceStats.timeouts.increment();
+            throw new IllegalStateException("timed out waiting for identical in-flight request", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for identical in-flight request", e);
+        }
+    }
+
+    public CompletableFuture<ResponseEntity<String>> executeAsync(String serviceName, String key,
+                                                                  Supplier<CompletableFuture<ResponseEntity<String>>> call) {
+        if (key == null) {
+            return call.get();
+        }
+        CompletableFuture<ResponseEntity<String>> own = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<String>> shared = inFlight.putIfAbsent(key, own);
+        if (shared == null) {
+            CompletableFuture<ResponseEntity<String>> upstream;
+            try {
+                upstream = call.get();
+            } catch (RuntimeException e) {
+                upstream = CompletableFuture.failedFuture(e);
+            }
+            upstream.whenComplete((response, error) -> {
+                inFlight.remove(key, own);
+                if (error != null) {
+                    own.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error);
+                } else {
+                    own.complete(response);
+                }
+            });
+            return own;
+        }
+
+        Stats serviceStats = stats.computeIfAbsent(serviceName, this::newStats);
+        serviceStats.joined.increment();
+        // copy, so one waiter timing out does not complete the shared future for the others
+        return shared.copy()
+                .orTimeout(services.getService(serviceName).getCoalescing().getMaxWait(), TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> {
+                    if (error instanceof TimeoutException) {
+                        serviceStats.timeouts.increment();
+                    }
+                });
+    }
+
+    private Stats newStats(String serviceName) {
+        Stats serviceStats = new Stats();
+        FunctionCounter.builder("gateway.coalescing.joined", serviceStats.joined, LongAdder::sum)
+                .description("requests served by an identical in-flight upstream call")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.coalescing.timeouts", serviceStats.timeouts, LongAdder::sum)
+                .description("joined requests that gave up waiting for the shared call")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        return serviceStats;
+    }
+
+    private static void appendHeader(StringBuilder key, HttpHeaders headers, String name) {
+        List<String> values = headers.get(name);
+        if (values != null) {
+            key.append('\n').append(name).append(':');
+            for (String value : values) {
+                key.append(value).append(',');
+            }
+        }
+    }
+
+    private static final class Stats {
+        private final LongAdder joined = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+    }
+}
@@ -0,0 +1,644 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// shared http cache for GET responses (RFC 9111 subset): freshness from Cache-Control / Expires,
+// ETag revalidation against the upstream, Vary, invalidation by unsafe methods on the same path
+// bounded by bytes over lock striped segments, each evicts its least recently used path first; a new path
+// is only admitted over the eviction victim when it was asked for more often (TinyLFU), so a scan of
+// one-off paths cannot flush the hot ones
+@Component
+@RequiredArgsConstructor
+public class ResponseCache {
+    private static final long ENTRY_OVERHEAD = 128;
+    // power of two, the byte budget is split evenly between them
+    private static final int SEGMENTS = 16;
+    private static final List<String> NOT_STORED_HEADERS = List.of(
+            HttpHeaders.CONNECTION, "Keep-Alive", HttpHeaders.TRANSFER_ENCODING, HttpHeaders.AGE);
+
+    private final ServicesProperties services;
+    private final MeterRegistry meterRegistry;
+
+    private final Segment[] segments = newSegments();
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("gateway.cache.bytes", this, ResponseCache::totalBytes)
+                .description("approximate heap held by cached responses")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("gateway.cache.max.bytes", services, ServicesProperties::getResponseCacheMaxBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("gateway.cache.size", this, ResponseCache::totalEntries)
+                .description("cached responses")
+                .register(meterRegistry);
+    }
+
+    // null when the request must bypass the cache, otherwise carries the matching entry if there is one
+    // path is the upstream path, so routes rewriting to the same resource share entries
+    public Lookup lookup(String serviceName, String path, String query, HttpHeaders requestHeaders) {
+        Stats serviceStats = stats.computeIfAbsent(serviceName, this::newStats);
+        Directives requestDirectives = Directives.parse(requestHeaders.get(HttpHeaders.CACHE_CONTROL));
+        if (requestDirectives.noStore) {
+            return null;
+        }
+
+        String key = serviceName + ' ' + path;
+        Segment segment = segment(key);
+        Entry entry = null;
+        segment.lock.lock();
+        try {
+            segment.sketch.increment(key);
+            Resource resource = segment.resources.get(key);
+            if (resource != null) {
+                for (Entry candidate : resource.variants) {
+                    if (candidate.matches(query, requestHeaders)) {
+                        entry = candidate;
+                        break;
+                    }
+                }
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+
+        long now = System.currentTimeMillis();
+        boolean fresh = entry != null && !requestDirectives.noCache && requestDirectives.maxAge != 0
+                && entry.age(now) < entry.freshnessLifetime;
+        if (fresh) {
+            serviceStats.hits.increment();
+        } else {
+            serviceStats.misses.increment();
+        }
+        return new Lookup(serviceName, key, query, requestHeaders, entry, fresh,
+                requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH));
+    }
+
+    // response for a fresh hit, 304 if the client already holds the same representation
+    public ResponseEntity<String> cachedResponse(Lookup lookup) {
+        return toResponse(lookup.entry, lookup.clientIfNoneMatch, System.currentTimeMillis());
+    }
+
+    // stale entry with a validator: ask upstream whether it changed instead of refetching the body
+    // a client sending its own If-None-Match keeps it, the upstream answers that one
+    public void addValidators(Lookup lookup, HttpHeaders upstreamHeaders) {
+        if (lookup.entry != null && lookup.entry.etag != null && lookup.clientIfNoneMatch == null) {
+            upstreamHeaders.set(HttpHeaders.IF_NONE_MATCH, lookup.entry.etag);
+            lookup.validatorSent = true;
+        }
+    }
+
+    // stores or refreshes the entry from the upstream answer, returns what goes to the client
+    public ResponseEntity<String> complete(Lookup lookup, ResponseEntity<String> upstreamResponse) {
+        long now = System.currentTimeMillis();
+        int status = upstreamResponse.getStatusCode().value();
+        Stats serviceStats = stats.get(lookup.serviceName);
+
+        if (status == HttpStatus.NOT_MODIFIED.value() && lookup.entry != null) {
+            if (validatesEntry(lookup, upstreamResponse.getHeaders().getETag())) {
+                serviceStats.notModified.increment();
+                Entry refreshed = lookup.entry.refresh(upstreamResponse.getHeaders(), now);
+                replace(lookup, lookup.entry, refreshed);
+                return toResponse(refreshed, lookup.clientIfNoneMatch, now);
+            }
+            return upstreamResponse;
+        }
+        if (lookup.entry != null) {
+            serviceStats.modified.increment();
+        }
+        if (status == HttpStatus.OK.value()) {
+            Entry entry = Entry.from(lookup, upstreamResponse, now);
+            if (entry != null && entry.bytes <= services.getService(lookup.serviceName).getCache().getMaxEntrySize()) {
+                replace(lookup, lookup.entry, entry);
+            } else if (lookup.entry != null) {
+                replace(lookup, lookup.entry, null);
+            }
+        }
+        return upstreamResponse;
+    }
+
+    // POST/PUT/DELETE (or any other unsafe method) that went through drops every cached representation of the path
+    public void invalidate(String serviceName, String path, int status) {
+        if (!stats.containsKey(serviceName) || status >= 400) {
+            return;
+        }
+        String key = serviceName + ' ' + path;
+        Segment segment = segment(key);
+        segment.lock.lock();
+        try {
+            Resource resource = segment.resources.remove(key);
+            if (resource != null) {
+                segment.bytes -= resource.bytes;
+                segment.entries -= resource.variants.size();
+                stats.get(serviceName).invalidations.add(resource.variants.size());
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private void replace(Lookup lookup, Entry previous, Entry next) {
+        ServicesProperties.CacheProps props = services.getService(lookup.serviceName).getCache();
+        Stats serviceStats = stats.get(lookup.serviceName);
+        Segment segment = segment(lookup.key);
+        long budget = services.getResponseCacheMaxBytes() / SEGMENTS;
+        segment.lock.lock();
+        try {
+            Resource resource = segment.resources.get(lookup.key);
+            if (resource == null) {
+                if (next == null) {
+                    return;
+                }
+                if (!segment.admit(lookup.key, next.bytes, budget)) {
+                    serviceStats.rejections.increment();
+                    return;
+                }
+                resource = new Resource(lookup.serviceName);
+                segment.resources.put(lookup.key, resource);
+            }
+            // the same variant may have been stored meanwhile by a concurrent miss
+            for (Iterator<Entry> it = resource.variants.iterator(); it.hasNext(); ) {
+                Entry existing = it.next();
+                if (existing == previous || (next != null && existing.sameVariant(next))) {
+                    it.remove();
+                    resource.bytes -= existing.bytes;
+                    segment.bytes -= existing.bytes;
+                    segment.entries--;
+                }
+            }
+            if (next != null) {
+                resource.variants.add(next);
+                resource.bytes += next.bytes;
+                segment.bytes += next.bytes;
+                segment.entries++;
+                while (resource.variants.size() > props.getMaxVariants()) {
+                    Entry oldest = resource.variants.remove(0);
+                    resource.bytes -= oldest.bytes;
+                    segment.bytes -= oldest.bytes;
+                    segment.entries--;
+                    serviceStats.evictions.increment();
+                }
+            }
+            if (resource.variants.isEmpty()) {
+                segment.resources.remove(lookup.key);
+            }
+            evictOverflow(segment, budget);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // called under the segment lock
+    private void evictOverflow(Segment segment, long budget) {
+        Iterator<Resource> it = segment.resources.values().iterator();
+        while (segment.bytes > budget && it.hasNext()) {
+            Resource eldest = it.next();
+            it.remove();
+            segment.bytes -= eldest.bytes;
+            segment.entries -= eldest.variants.size();
+            Stats serviceStats = stats.get(eldest.serviceName);
+            if (serviceStats != null) {
+                serviceStats.evictions.add(eldest.variants.size());
+            }
+        }
+    }
+
+    private Segment segment(String key) {
+        // high bits pick the segment, the frequency sketch indexes by the low ones
+        int hash = key.hashCode() * 0x9E3779B9;
+        return segments[hash >>> (Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS))];
+    }
+
+    private static Segment[] newSegments() {
+        Segment[] segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        return segments;
+    }
+
+    private long totalBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes;
+        }
+        return bytes;
+    }
+
+    private long totalEntries() {
+        long entries = 0;
+        for (Segment segment : segments) {
+            entries += segment.entries;
+        }
+        return entries;
+    }
+
+    // a 304 answers the If-None-Match that went upstream; when that was the client's own it may have matched
+    // a representation the cache does not hold, so the entry is refreshed only when the 304 names the stored
+    // ETag, or carries none and the cache sent the stored ETag itself
+    private static boolean validatesEntry(Lookup lookup, String etag) {
+        if (lookup.entry.etag == null) {
+            return false;
+        }
+        if (etag != null) {
+            return stripWeak(etag).equals(stripWeak(lookup.entry.etag));
+        }
+        return lookup.validatorSent;
+    }
+
+    private ResponseEntity<String> toResponse(Entry entry, String clientIfNoneMatch, long now) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(entry.headers);
+        headers.set(HttpHeaders.AGE, Long.toString(entry.age(now) / 1000));
+        if (clientIfNoneMatch != null && entry.etag != null && etagMatches(clientIfNoneMatch, entry.etag)) {
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            headers.remove(HttpHeaders.CONTENT_TYPE);
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        return new ResponseEntity<>(entry.body, headers, HttpStatus.OK);
+    }
+
+    // weak comparison, If-None-Match may carry a list or *
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+        String wanted = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            if (stripWeak(candidate.trim()).equals(wanted)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    // created with the first cacheable request of a service
+    private Stats newStats(String serviceName) {
+        Stats serviceStats = new Stats();
+        FunctionCounter.builder("gateway.cache.gets", serviceStats.hits, LongAdder::sum)
+                .description("cache lookups")
+                .tag("service", serviceName).tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.cache.gets", serviceStats.misses, LongAdder::sum)
+                .description("cache lookups")
+                .tag("service", serviceName).tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.cache.revalidations", serviceStats.notModified, LongAdder::sum)
+                .description("stale entries revalidated with the upstream")
+                .tag("service", serviceName).tag("result", "not-modified")
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.cache.revalidations", serviceStats.modified, LongAdder::sum)
+                .description("stale entries revalidated with the upstream")
+                .tag("service", serviceName).tag("result", "modified")
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.cache.evictions", serviceStats.evictions, LongAdder::sum)
+                .description("entries dropped to stay within the size limits")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.cache.rejections", serviceStats.rejections, LongAdder::sum)
+                .description("new entries not admitted, asked for less often than the entry they would evict")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.cache.invalidations", serviceStats.invalidations, LongAdder::sum)
+                .description("entries dropped by POST/PUT/DELETE on the same path")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        Gauge.builder("gateway.cache.hit.ratio", serviceStats, s -> {
+                    double hits = s.hits.sum();
+                    double total = hits + s.misses.sum();
+                    return total > 0 ? hits / total : 0;
+                })
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        return serviceStats;
+    }
+
+    public static final class Lookup {
+        private final String serviceName;
+        private final String key;
+        private final String query;
+        private final HttpHeaders requestHeaders;
+        private final Entry entry;
+        private final boolean fresh;
+        private final String clientIfNoneMatch;
+        // the stored ETag went upstream as If-None-Match, see addValidators
+        private boolean validatorSent;
+
+        private Lookup(String serviceName, String key, String query, HttpHeaders requestHeaders, Entry entry,
+                       boolean fresh, String clientIfNoneMatch) {
+            this.serviceName = serviceName;
+            this.key = key;
+            this.query = query;
+            this.requestHeaders = requestHeaders;
+            this.entry = entry;
+            this.fresh = fresh;
+            this.clientIfNoneMatch = clientIfNoneMatch;
+        }
+
+        public boolean isFresh() {
+            return fresh;
+        }
+    }
+
+    // one lock stripe: its paths in access order, and how often paths hashing here were asked for
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        // service + path -> all cached representations of it, in access order
+        private final LinkedHashMap<String, Resource> resources = new LinkedHashMap<>(64, 0.75f, true);
+        private final FrequencySketch sketch = new FrequencySketch();
+        // written under lock, read by the gauges without it
+        private volatile long bytes;
+        private volatile int entries;
+
+        // called under lock: a path that would push the eldest one out has to be the more popular of the two
+        private boolean admit(String key, long size, long budget) {
+            if (size > budget) {
+                return false;
+            }
+            if (bytes + size <= budget || resources.isEmpty()) {
+                return true;
+            }
+            String victim = resources.keySet().iterator().next();
+            return sketch.frequency(key) > sketch.frequency(victim);
+        }
+    }
+
+    // count-min sketch of recent lookups per path, 4 rows of counters saturating at 15;
+    // all counters are halved every SAMPLE increments so popularity ages out
+    private static final class FrequencySketch {
+        private static final int WIDTH = 2048;
+        private static final int SAMPLE = 10 * WIDTH;
+        private static final int[] SEEDS = {0x97CB3127, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[] counters = new byte[SEEDS.length * WIDTH];
+        private int additions;
+
+        private void increment(String key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = index(hash, row);
+                if (counters[index] < 15) {
+                    counters[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= SAMPLE) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int frequency(String key) {
+            int hash = key.hashCode();
+            int frequency = 15;
+            for (int row = 0; row < SEEDS.length; row++) {
+                frequency = Math.min(frequency, counters[index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private static int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+            h ^= h >>> 15;
+            return row * WIDTH + (h & (WIDTH - 1));
+        }
+    }
+
+    private static final class Resource {
+        private final String serviceName;
+        private final List<Entry> variants = new ArrayList<>(2);
+        private long bytes;
+
+        private Resource(String serviceName) {
+            this.serviceName = serviceName;
+        }
+    }
+
+    // one stored representation, immutable, revalidation replaces it
+    private static final class Entry {
+        private final String query;
+        private final List<String> varyNames;
+        private final List<String> varyValues;
+        private final HttpHeaders headers;
+        private final String body;
+        private final String etag;
+        private final long storedAt;
+        private final long initialAge;
+        private final long freshnessLifetime;
+        private final long bytes;
+
+        private Entry(String query, List<String> varyNames, List<String> varyValues, HttpHeaders headers, String body,
+                      long storedAt, long initialAge, long freshnessLifetime) {
+            this.query = query;
+            this.varyNames = varyNames;
+            this.varyValues = varyValues;
+            this.headers = headers;
+            this.body = body;
+            this.etag = headers.getETag();
+            this.storedAt = storedAt;
+            this.initialAge = initialAge;
+            this.freshnessLifetime = freshnessLifetime;
+            long size = ENTRY_OVERHEAD + query.length() + (body != null ? body.length() : 0);
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                size += header.getKey().length();
+                for (String value : header.getValue()) {
+                    size += value.length();
+                }
+            }
+            this.bytes = size;
+        }
+
+        // null when the response must not be stored by a shared cache
+        private static Entry from(Lookup lookup, ResponseEntity<String> response, long now) {
+            HttpHeaders responseHeaders = response.getHeaders();
+            Directives directives = Directives.parse(responseHeaders.get(HttpHeaders.CACHE_CONTROL));
+            if (directives.noStore || directives.isPrivate || responseHeaders.containsKey(HttpHeaders.SET_COOKIE)) {
+                return null;
+            }
+            if (lookup.requestHeaders.containsKey(HttpHeaders.AUTHORIZATION)
+                    && !directives.isPublic && directives.sMaxAge < 0 && !directives.mustRevalidate) {
+                return null;
+            }
+            List<String> varyNames = new ArrayList<>();
+            for (String vary : responseHeaders.getVary()) {
+                if (vary.equals("*")) {
+                    return null;
+                }
+                varyNames.add(vary.toLowerCase(Locale.ROOT));
+            }
+            // encoded for this client's Accept-Encoding, whether or not the upstream said so
+            String acceptEncoding = HttpHeaders.ACCEPT_ENCODING.toLowerCase(Locale.ROOT);
+            if (UpstreamResponses.isEncoded(responseHeaders) && !varyNames.contains(acceptEncoding)) {
+                varyNames.add(acceptEncoding);
+            }
+            long lifetime = directives.noCache ? 0 : freshnessLifetime(directives, responseHeaders);
+            if (lifetime <= 0 && responseHeaders.getETag() == null) {
+                // would be stale right away with nothing to revalidate by
+                return null;
+            }
+
+            HttpHeaders stored = new HttpHeaders();
+            responseHeaders.forEach((name, values) -> {
+                if (NOT_STORED_HEADERS.stream().noneMatch(name::equalsIgnoreCase)) {
+                    stored.addAll(name, values);
+                }
+            });
+            List<String> varyValues = new ArrayList<>(varyNames.size());
+            for (String name : varyNames) {
+                varyValues.add(headerValue(lookup.requestHeaders, name));
+            }
+            return new Entry(lookup.query, varyNames, varyValues, stored, response.getBody(), now,
+                    initialAge(responseHeaders), lifetime);
+        }
+
+        // 304 carries updated freshness, its headers replace the stored ones
+        private Entry refresh(HttpHeaders notModifiedHeaders, long now) {
+            HttpHeaders merged = new HttpHeaders();
+            merged.addAll(headers);
+            notModifiedHeaders.forEach((name, values) -> {
+                if (NOT_STORED_HEADERS.stream().noneMatch(name::equalsIgnoreCase)
+                        && !name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)) {
+                    merged.put(name, values);
+                }
+            });
+            Directives directives = Directives.parse(merged.get(HttpHeaders.CACHE_CONTROL));
+            long lifetime = directives.noCache ? 0 : freshnessLifetime(directives, merged);
+            return new Entry(query, varyNames, varyValues, merged, body, now, initialAge(notModifiedHeaders), lifetime);
+        }
+
+        private boolean matches(String requestQuery, HttpHeaders requestHeaders) {
+            if (!query.equals(requestQuery)) {
+                return false;
+            }
+            for (int i = 0; i < varyNames.size(); i++) {
+                if (!varyValues.get(i).equals(headerValue(requestHeaders, varyNames.get(i)))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean sameVariant(Entry other) {
+            return query.equals(other.query) && varyNames.equals(other.varyNames) && varyValues.equals(other.varyValues);
+        }
+
+        private long age(long now) {
+            return initialAge + Math.max(0, now - storedAt);
+        }
+
+        private static long freshnessLifetime(Directives directives, HttpHeaders headers) {
+            if (directives.sMaxAge >= 0) {
+                return directives.sMaxAge * 1000;
+            }
+            if (directives.maxAge >= 0) {
+                return directives.maxAge * 1000;
+            }
+            long expires = headers.getExpires();
+            if (expires > 0) {
+                long date = headers.getDate();
+                return expires - (date > 0 ? date : System.currentTimeMillis());
+            }
+            return 0;
+        }
+
+        private static long initialAge(HttpHeaders headers) {
+            String age = headers.getFirst(HttpHeaders.AGE);
+            try {
+                return age != null ? Long.parseLong(age.trim()) * 1000 : 0;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        private static String headerValue(HttpHeaders headers, String name) {
+            List<String> values = headers.get(name);
+            return values != null ? String.join(",", values) : "";
+        }
+    }
+
+    // the Cache-Control directives a shared cache cares about
+    private static final class Directives {
+        private static final Directives NONE = new Directives();
+
+        private boolean noStore;
+        private boolean noCache;
+        private boolean isPrivate;
+        private boolean isPublic;
+        private boolean mustRevalidate;
+        private long maxAge = -1;
+        private long sMaxAge = -1;
+
+        private static Directives parse(List<String> cacheControl) {
+            if (cacheControl == null || cacheControl.isEmpty()) {
+                return NONE;
+            }
+            Directives directives = new Directives();
+            for (String header : cacheControl) {
+                for (String directive : header.split(",")) {
+                    String[] parts = directive.trim().split("=", 2);
+                    String name = parts[0].trim().toLowerCase(Locale.ROOT);
+                    String value = parts.length > 1 ? parts[1].trim().replace("\"", "") : null;
+                    switch (name) {
+                        case "no-store" -> directives.noStore = true;
+                        case "no-cache" -> directives.noCache = true;
+                        case "private" -> directives.isPrivate = true;
+                        case "public" -> directives.isPublic = true;
+                        case "must-revalidate", "proxy-revalidate" -> directives.mustRevalidate = true;
+                        case "max-age" -> directives.maxAge = seconds(value);
+                        case "s-maxage" -> directives.sMaxAge = seconds(value);
+                        default -> {
+                        }
+                    }
+                }
+            }
+            return directives;
+        }
+
+        private static long seconds(String value) {
+            try {
+                return value != null ? Math.max(0, Long.parseLong(value)) : -1;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    private static final class Stats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder notModified = new LongAdder();
+        private final LongAdder modified = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder rejections = new LongAdder();
+        private final LongAdder invalidations = new LongAdder();
+    }
+}
@@ -0,0 +1,140 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import lombok.RequiredArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+// gzip at the edge, per service: only for clients whose Accept-Encoding takes gzip, configured mime types,
+// bodies over min-size and responses the upstream did not encode already
+// br is not produced (no encoder on the classpath), clients preferring it get gzip
+@Component
+@RequiredArgsConstructor
+public class ResponseCompression {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ServicesProperties services;
+
+    private final Map<String, List<MediaType>> mimeTypes = new ConcurrentHashMap<>();
+
+    // buffered and async modes: a gzipped copy, the raw bytes of a body the upstream encoded already,
+    // or the response itself when it stays as is
+    public ResponseEntity<?> compress(String serviceName, String acceptEncoding, ResponseEntity<String> response) {
+        ServicesProperties.CompressionProps props = services.getService(serviceName).getCompression();
+        String body = response.getBody();
+        if (body != null && UpstreamResponses.isEncoded(response.getHeaders())) {
+            // the string converter would re-encode the chars, these have to go out as the bytes they stand for
+            return new ResponseEntity<>(UpstreamResponses.bytes(body, response.getHeaders()), response.getHeaders(),
+                    response.getStatusCode());
+        }
+        // chars never outnumber the bytes they encode to, so a short string is a short body
+        if (!props.isEnabled() || body == null || body.length() < props.getMinSize()
+                || !applies(serviceName, acceptEncoding, response.getHeaders())) {
+            return response;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length() / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed, BUFFER_SIZE)) {
+            out.write(UpstreamResponses.bytes(body, response.getHeaders()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(response.getHeaders());
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        return new ResponseEntity<>(compressed.toByteArray(), headers, response.getStatusCode());
+    }
+
+    // streaming mode: whether the body about to be piped should go through gzip
+    // length unknown (chunked upstream) counts as large enough
+    public boolean shouldCompress(String serviceName, String acceptEncoding, HttpHeaders upstream) {
+        ServicesProperties.CompressionProps props = services.getService(serviceName).getCompression();
+        if (!props.isEnabled()) {
+            return false;
+        }
+        long contentLength = upstream.getContentLength();
+        return (contentLength < 0 || contentLength >= props.getMinSize()) && applies(serviceName, acceptEncoding, upstream);
+    }
+
+    // headers for a gzipped body of unknown length, the caller has to finish() the stream
+    public static GZIPOutputStream gzip(HttpServletResponse response) throws IOException {
+        response.setContentLengthLong(-1);
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        return new GZIPOutputStream(response.getOutputStream(), BUFFER_SIZE);
+    }
+
+    private boolean applies(String serviceName, String acceptEncoding, HttpHeaders headers) {
+        if (headers.containsKey(HttpHeaders.CONTENT_ENCODING) || !acceptsGzip(acceptEncoding)) {
+            return false;
+        }
+        MediaType contentType;
+        try {
+            contentType = headers.getContentType();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (contentType == null) {
+            return false;
+        }
+        for (MediaType mimeType : mimeTypes(serviceName)) {
+            if (mimeType.includes(contentType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<MediaType> mimeTypes(String serviceName) {
+        List<MediaType> types = mimeTypes.get(serviceName);
+        return types != null ? types : mimeTypes.computeIfAbsent(serviceName,
+                name -> MediaType.parseMediaTypes(services.getService(name).getCompression().getMimeTypes()));
+    }
+
+    // gzip, x-gzip or * with a non-zero q, and gzip not refused explicitly
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String coding : acceptEncoding.split(",")) {
+            int semicolon = coding.indexOf(';');
+            String name = (semicolon >= 0 ? coding.substring(0, semicolon) : coding).trim();
+            boolean accepted = semicolon < 0 || quality(coding.substring(semicolon + 1)) > 0;
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                return accepted;
+            }
+            if (name.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard;
+    }
+
+    private static double quality(String params) {
+        for (String param : params.split(";")) {
+            String trimmed = param.trim();
+            if (trimmed.startsWith("q=") || trimmed.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(trimmed.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,133 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// token bucket per service: requests deposit budget-ratio tokens, retries and hedges withdraw one
+// when an outage makes every request fail the bucket drains and extra attempts stop
+@Component
+@RequiredArgsConstructor
+public class RetryBudget {
+    private static final long TOKEN = 1000;
+    // the bucket holds at most this many seconds of min-retries-per-second
+    private static final int BURST_SECONDS = 10;
+
+    private final ServicesProperties services;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    // once per client request, before the first attempt
+    public void onRequest(String serviceName) {
+        Bucket bucket = bucket(serviceName);
+        bucket.deposit((long) (bucket.props.getBudgetRatio() * TOKEN));
+    }
+
+    // kind is retry or hedge, only used for metrics
+    public boolean tryAcquire(String serviceName, String kind) {
+        Bucket bucket = bucket(serviceName);
+        bucket.refill();
+        if (bucket.withdraw()) {
+            (kind.equals("hedge") ? bucket.hedges : bucket.retries).increment();
+            return true;
+        }
+        bucket.exhausted.increment();
+        return false;
+    }
+
+    // exponential backoff with full jitter before the given retry (1 for the first), ms
+    public long backoff(String serviceName, int retry) {
+        ServicesProperties.RetryProps props = bucket(serviceName).props;
+        if (props.getBackoff() <= 0) {
+            return 0;
+        }
+        long ceiling = Math.min(props.getMaxBackoff(), props.getBackoff() << Math.min(retry - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private Bucket bucket(String serviceName) {
+        Bucket bucket = buckets.get(serviceName);
+        return bucket != null ? bucket : buckets.computeIfAbsent(serviceName, this::newBucket);
+    }
+
+    private Bucket newBucket(String serviceName) {
+        Bucket bucket = new Bucket(services.getService(serviceName).getRetry());
+        Gauge.builder("gateway.retry.budget.tokens", bucket, b -> (double) b.balance.get() / TOKEN)
+                .description("retries and hedges the service may currently spend")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.retry.attempts", bucket.retries, LongAdder::sum)
+                .description("extra upstream attempts paid from the retry budget")
+                .tag("service", serviceName).tag("kind", "retry")
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.retry.attempts", bucket.hedges, LongAdder::sum)
+                .description("extra upstream attempts paid from the retry budget")
+                .tag("service", serviceName).tag("kind", "hedge")
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.retry.budget.exhausted", bucket.exhausted, LongAdder::sum)
+                .description("retries and hedges skipped because the budget was empty")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        return bucket;
+    }
+
+    private static final class Bucket {
+        private final ServicesProperties.RetryProps props;
+        private final long capacity;
+        // thousandths of a token
+        private final AtomicLong balance;
+        private final AtomicLong lastRefillNanos = new AtomicLong(System.nanoTime());
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder exhausted = new LongAdder();
+
+        private Bucket(ServicesProperties.RetryProps props) {
+            this.props = props;
+            this.capacity = Math.max(1, (long) props.getMinRetriesPerSecond() * BURST_SECONDS) * TOKEN;
+            this.balance = new AtomicLong(capacity);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            long last = lastRefillNanos.get();
+            long elapsed = Math.min(now - last, BURST_SECONDS * 1_000_000_000L);
+            long amount = elapsed * props.getMinRetriesPerSecond() * TOKEN / 1_000_000_000L;
+            // one thread per interval gets to add the time based share
+            if (amount > 0 && lastRefillNanos.compareAndSet(last, now)) {
+                deposit(amount);
+            }
+        }
+
+        private void deposit(long amount) {
+            long current;
+            do {
+                current = balance.get();
+                if (current >= capacity) {
+                    return;
+                }
+            } while (!balance.compareAndSet(current, Math.min(capacity, current + amount)));
+        }
+
+        private boolean withdraw() {
+            long current;
+            do {
+                current = balance.get();
+                if (current < TOKEN) {
+                    return false;
+                }
+            } while (!balance.compareAndSet(current, current - TOKEN));
+            return true;
+        }
+    }
+}
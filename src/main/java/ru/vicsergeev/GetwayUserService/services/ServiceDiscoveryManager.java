@@ -2,17 +2,25 @@ package ru.vicsergeev.GetwayUserService.services;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.observability.UpstreamMetrics;
+import ru.vicsergeev.GetwayUserService.services.balancer.LoadBalancer;
+import ru.vicsergeev.GetwayUserService.services.discovery.DiscoverySource;
+import ru.vicsergeev.GetwayUserService.services.discovery.FileDiscoverySource;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Created by Victor 01.11.2025
@@ -21,155 +29,453 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Component
 public class ServiceDiscoveryManager {
     private static final Logger log = LoggerFactory.getLogger(ServiceDiscoveryManager.class);
+    private static final ServiceInstance[] NO_INSTANCES = new ServiceInstance[0];
+    // how often draining instances are checked for their last request
+    private static final Duration DRAIN_CHECK_INTERVAL = Duration.ofSeconds(1);
     private final ServicesProperties serviceProperties;
-    private final RestTemplate healthCheckRestTemplate;
-    private long healthCheckIntervalMs;
+    private final ObjectProvider<DiscoverySource> discoverySources;
+    private final TaskScheduler taskScheduler;
+    private final UpstreamMetrics upstreamMetrics;
 
-    private final Map<String, Map<String, Boolean>> serviceInstances = new ConcurrentHashMap<>();
+    private final Map<String, ServiceState> serviceStates = new ConcurrentHashMap<>();
+    private final List<DiscoverySource> sources = new CopyOnWriteArrayList<>();
 
-    private final Map<String, AtomicInteger> roundRobinIndexes = new ConcurrentHashMap<>();
-
-    private final Map<String, Map<String, Long>> instancesFailureTimes = new ConcurrentHashMap<>();
-
-    private static final long FAILURE_COOLDOWN_IN_MS = 30000;
-
-    public ServiceDiscoveryManager(ServicesProperties serviceProperties) {
+    public ServiceDiscoveryManager(ServicesProperties serviceProperties, ObjectProvider<DiscoverySource> discoverySources,
+                                   TaskScheduler taskScheduler, UpstreamMetrics upstreamMetrics) {
         this.serviceProperties = serviceProperties;
-        this.healthCheckRestTemplate = new RestTemplate();
+        this.discoverySources = discoverySources;
+        this.taskScheduler = taskScheduler;
+        this.upstreamMetrics = upstreamMetrics;
     }
 
     @PostConstruct
     public void init() {
-        // init interval health check from config
-        healthCheckIntervalMs = serviceProperties.getUser().getHealthCheckInterval() * 1000L;
-        // init user services inst
-        List<String> userInstances = serviceProperties.getUser().getInstancesOrSingle();
-        serviceInstances.put("user", new ConcurrentHashMap<>());
-        instancesFailureTimes.put("user", new ConcurrentHashMap<>());
-        roundRobinIndexes.put("user", new AtomicInteger(0));
+        serviceProperties.getServices().forEach((serviceName, props) -> {
+            long rampNanos = TimeUnit.MILLISECONDS.toNanos(props.getOutlier().getSlowStart());
+            ServiceState state = new ServiceState(serviceName, props.getInstancesOrSingle(),
+                    LoadBalancer.create(props.getLoadBalancer(), props.getHash(), rampNanos), rampNanos);
+            serviceStates.put(serviceName, state);
+            for (ServiceInstance instance : state.instances) {
+                log.info("service discovery info msg: registered {} service instance: {}", serviceName, instance);
+            }
+        });
+        taskScheduler.scheduleWithFixedDelay(this::sweepDraining, DRAIN_CHECK_INTERVAL);
 
-        for (String instance : userInstances) {
-            serviceInstances.get("user").put(instance, true);
-            log.info("service discovery info msg: registered user service instance: {}", instance);
+        ServicesProperties.DiscoveryProps discovery = serviceProperties.getDiscovery();
+        if (discovery.getFile() != null && !discovery.getFile().isBlank()) {
+            sources.add(new FileDiscoverySource(Path.of(discovery.getFile()), discovery.getReloadInterval()));
         }
+        discoverySources.orderedStream().forEach(sources::add);
+        for (DiscoverySource source : sources) {
+            source.start(this::updateInstances);
+        }
+    }
 
-        // init notification service inst
-        List<String> notificationIntances = serviceProperties.getNotification().getInstancesOrSingle();
-        serviceInstances.put("notification", new ConcurrentHashMap<>());
-        instancesFailureTimes.put("notification", new ConcurrentHashMap<>());
-        roundRobinIndexes.put("notification", new AtomicInteger(0));
+    @PreDestroy
+    public void stop() {
+        sources.forEach(DiscoverySource::stop);
+    }
 
-        for (String instance : notificationIntances) {
-            serviceInstances.get("notification").put(instance, true);
-            log.info("service discovery info msg: registered user service instance: {}", instance);
+    // replaces the service's instance list from a discovery source: listed instances keep their ServiceInstance
+    // (load stats, ejection state), new ones join ramping up, missing ones drain; null restores the configured list
+    // refuses an empty list, a half written file must not take the service down
+    public void updateInstances(String serviceName, List<String> urls) {
+        ServiceState state = serviceStates.get(serviceName);
+        if (state == null) {
+            log.warn("ServiceDiscovery: instances for unknown service {} ignored, services come from configuration",
+                    serviceName);
+            return;
+        }
+        List<String> next = urls != null ? urls : state.configured;
+        if (next.isEmpty()) {
+            log.warn("ServiceDiscovery: empty instance list for {} ignored, keeping {}", serviceName,
+                    Arrays.toString(state.instances));
+            return;
+        }
+        Change change = state.replace(next, drainDeadline());
+        if (change.changed()) {
+            log.info("ServiceDiscovery: {} instances now {} (added {}, draining {})", serviceName,
+                    Arrays.toString(state.instances), change.added(), change.drained());
         }
     }
 
-    // round robin to get next available instance
-    public String getNextInstance(String serviceName) {
-        Map<String, Boolean> instances = serviceInstances.get(serviceName);
-        if (instances == null || instances.isEmpty()) {
-            throw new IllegalStateException("no instances available for service: " + serviceName);
+    // joins the service, or brings back an instance drained by hand
+    public boolean addInstance(String serviceName, String url) {
+        ServiceState state = serviceStates.get(serviceName);
+        if (state == null || !state.add(url)) {
+            return false;
         }
+        log.info("ServiceDiscovery: {} instance added: {}", serviceName, url);
+        return true;
+    }
 
-        List<String> availableInstances = instances.entrySet().stream()
-                .filter(Map.Entry::getValue)
-                .map(Map.Entry::getKey)
-                .toList();
+    // out of rotation until added back, in-flight requests finish; remove forgets it once they have
+    // false for unknown instances and for the last one in rotation
+    public boolean drainInstance(String serviceName, String url, boolean remove) {
+        ServiceState state = serviceStates.get(serviceName);
+        if (state == null || !state.drain(url, remove, drainDeadline())) {
+            return false;
+        }
+        log.info("ServiceDiscovery: {} instance draining{}: {}", serviceName, remove ? " for removal" : "", url);
+        return true;
+    }
+
+    private long drainDeadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(serviceProperties.getDiscovery().getDrainTimeout());
+    }
+
+    // drops instances being removed once their last request is done, or the drain timeout passed
+    private void sweepDraining() {
+        long now = System.nanoTime();
+        serviceStates.forEach((serviceName, state) -> {
+            for (Draining drained : state.sweep(now)) {
+                ServiceInstance instance = drained.instance();
+                if (instance.getInFlight() > 0) {
+                    log.warn("ServiceDiscovery: {} instance {} removed with {} requests still in flight, drain timed out",
+                            serviceName, instance, instance.getInFlight());
+                } else {
+                    log.info("ServiceDiscovery: {} instance drained and removed: {}", serviceName, instance);
+                }
+                upstreamMetrics.forget(instance);
+            }
+        });
+    }
+
+    // next available instance by the service's load balancer
+    // hot path: one volatile read of the healthy snapshot plus the balancer pick, no allocation
+    public ServiceInstance nextInstance(String serviceName) {
+        return nextInstance(serviceName, null);
+    }
+
+    // hashKey picks the instance under consistent hashing, null balances as usual
+    public ServiceInstance nextInstance(String serviceName, String hashKey) {
+        ServiceState state = serviceStates.get(serviceName);
+        if (state == null || state.instances.length == 0) {
+            throw new IllegalStateException("no instances available for service: " + serviceName);
+        }
 
-        if (availableInstances.isEmpty()) {
+        ServiceInstance[] availableInstances = state.available;
+        if (availableInstances.length == 0) {
             // if all instances are unavailable try to recover
             log.warn("ServiceDiscovery: all instances unavalable for {}, trying to recover", serviceName);
-            availableInstances = new ArrayList<>(instances.keySet());
+            availableInstances = state.instances;
         }
 
-        AtomicInteger index = roundRobinIndexes.get(serviceName);
-        int currentIndex = index.getAndIncrement() % availableInstances.size();
-        String selectedInstance = availableInstances.get(currentIndex);
+        ServiceInstance selectedInstance = hashKey != null
+                ? state.loadBalancer.choose(availableInstances, hashKey)
+                : state.loadBalancer.choose(availableInstances);
+        // instance back from ejection only gets a growing share of its picks, the rest go elsewhere
+        // a hash keyed pick was weighted on the ring already, a random re-pick would break its affinity
+        if (hashKey == null && availableInstances.length > 1 && state.rampNanos > 0) {
+            double weight = selectedInstance.trafficWeight(state.rampNanos);
+            if (weight < 1.0 && ThreadLocalRandom.current().nextDouble() >= weight) {
+                selectedInstance = state.loadBalancer.choose(availableInstances);
+            }
+        }
 
-        log.debug("ServiceDiscovery: selected {} instance: {} (index: {})", serviceName, selectedInstance, currentIndex);
+        if (log.isDebugEnabled()) {
+            log.debug("ServiceDiscovery: selected {} instance: {} (in flight: {})", serviceName, selectedInstance,
+                    selectedInstance.getInFlight());
+        }
 
         return selectedInstance;
     }
 
+    public String getNextInstance(String serviceName) {
+        return nextInstance(serviceName).getUrl();
+    }
+
     // mark inst as failed
     public void markInstanceAsFailed(String serviceName, String instanceUrl) {
-        Map<String, Boolean> instances = serviceInstances.get(serviceName);
-        if (instances != null && instances.containsKey(instanceUrl)) {
-            instances.put(instanceUrl, false);
-            instancesFailureTimes.get(serviceName).put(instanceUrl, System.currentTimeMillis());
-            log.warn("ServiceDiscovery: marked {} instance as unvailable: {}", serviceName, instanceUrl);
+        ServiceState state = serviceStates.get(serviceName);
+        ServiceInstance instance = state != null ? state.byUrl.get(instanceUrl) : null;
+        if (instance != null) {
+            instance.setFailureTime(System.currentTimeMillis());
+            if (state.setHealthy(instance, false)) {
+                log.warn("ServiceDiscovery: marked {} instance as unvailable: {}", serviceName, instanceUrl);
+            }
         }
     }
 
-    // periodic instances health check
-    // fixedDelay - wil restart after specific interval after previous terminated
-    @Scheduled(fixedDelay = 30000)
-    public void performHealthChecks() {
-        checkServiceInstances("user", "/users");
-        checkServiceInstances("notification", "/actuator/health");
+    public void markInstanceAsHealthy(String serviceName, String instanceUrl) {
+        ServiceState state = serviceStates.get(serviceName);
+        ServiceInstance instance = state != null ? state.byUrl.get(instanceUrl) : null;
+        if (instance != null) {
+            instance.setFailureTime(0);
+            if (state.setHealthy(instance, true)) {
+                log.info("ServiceDiscovery: {} instance recovered: {}", serviceName, instanceUrl);
+            }
+        }
     }
 
-    private void checkServiceInstances(String serviceName, String healthEndpoint) {
-        Map<String, Boolean> instances = serviceInstances.get(serviceName);
-        if (instances == null) {
-            return;
+    // take instance out of rotation unless that would eject more than maxEjectionPercent of the service
+    boolean tryEject(ServiceInstance instance, int maxEjectionPercent) {
+        ServiceState state = serviceStates.get(instance.getServiceName());
+        return state != null && state.tryEject(instance, maxEjectionPercent);
+    }
+
+    void returnFromEjection(ServiceInstance instance) {
+        ServiceState state = serviceStates.get(instance.getServiceName());
+        if (state != null && state.returnFromEjection(instance)) {
+            log.info("ServiceDiscovery: {} instance returned from ejection: {}", instance.getServiceName(), instance);
+        }
+    }
+
+    // current balancing snapshot, callers must not modify it
+    ServiceInstance[] availableSnapshot(String serviceName) {
+        ServiceState state = serviceStates.get(serviceName);
+        return state != null ? state.available : NO_INSTANCES;
+    }
+
+    // instances out of rotation that still finish their requests, see drainInstance
+    public List<Draining> getDraining(String serviceName) {
+        ServiceState state = serviceStates.get(serviceName);
+        return state != null ? state.drainingSnapshot() : Collections.emptyList();
+    }
+
+    // all instances in rotation, healthy or not
+    public List<ServiceInstance> getInstances(String serviceName) {
+        ServiceState state = serviceStates.get(serviceName);
+        return state != null ? List.of(state.instances) : Collections.emptyList();
+    }
+
+    public int getAvailableInstanceCount(String serviceName) {
+        ServiceState state = serviceStates.get(serviceName);
+        return state != null ? state.available.length : 0;
+    }
+
+    // get all available isntances
+    public List<String> getAvailableInstances(String serviceName) {
+        ServiceState state = serviceStates.get(serviceName);
+        if (state == null) {
+            return Collections.emptyList();
         }
 
-        ServicesProperties.ServiceProps serviceProps = "user".equals(serviceName) ?
-                serviceProperties.getUser() : serviceProperties.getNotification();
+        return Arrays.stream(state.available)
+                .map(ServiceInstance::getUrl)
+                .toList();
+    }
+
+    // instance taken out of rotation; removing ones are forgotten once drained, the others wait to be added back
+    public record Draining(ServiceInstance instance, boolean removing, long deadlineNanos) {
+    }
+
+    private record Change(int added, int drained) {
+        private boolean changed() {
+            return added > 0 || drained > 0;
+        }
+    }
 
-        int timeout = serviceProps.getHealthCheckTimeout();
+    // instances of one service; health and membership changes are rare, so they rebuild immutable
+    // snapshots under a lock and publish them with volatile writes, the request path never waits
+    private static final class ServiceState {
+        private final String serviceName;
+        private final List<String> configured;
+        private final LoadBalancer loadBalancer;
+        private final long rampNanos;
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private volatile ServiceInstance[] instances;
+        private volatile Map<String, ServiceInstance> byUrl;
+        private volatile ServiceInstance[] available;
+        // by url, guarded by writeLock
+        private final Map<String, Draining> draining = new LinkedHashMap<>();
 
-        for (Map.Entry<String, Boolean> entry : instances.entrySet()) {
-            String instanceUrl = entry.getKey();
-            boolean isCurrentAvailable = entry.getValue();
+        private ServiceState(String serviceName, List<String> urls, LoadBalancer loadBalancer, long rampNanos) {
+            this.serviceName = serviceName;
+            this.configured = List.copyOf(urls);
+            this.loadBalancer = loadBalancer;
+            this.rampNanos = rampNanos;
+            setInstances(urls.stream()
+                    .distinct()
+                    .map(url -> new ServiceInstance(serviceName, url))
+                    .toArray(ServiceInstance[]::new));
+        }
 
+        private Change replace(List<String> urls, long drainDeadline) {
+            writeLock.lock();
             try {
-                String healthUrl = instanceUrl + healthEndpoint;
-                ResponseEntity<String> response = healthCheckRestTemplate.exchange(
-                        healthUrl,
-                        HttpMethod.GET,
-                        null,
-                        String.class
-                );
-
-                if (response.getStatusCode().is2xxSuccessful()) {
-                    if (!isCurrentAvailable) {
-                        log.info("ServiceDiscovery: {} instance recovered: {}", serviceName, instanceUrl);
-                        instances.put(instanceUrl, true);
-                        instancesFailureTimes.get(serviceName).remove(instanceUrl);
+                Map<String, ServiceInstance> current = byUrl;
+                List<ServiceInstance> next = new ArrayList<>(urls.size());
+                int added = 0;
+                for (String url : new LinkedHashSet<>(urls)) {
+                    ServiceInstance instance = current.get(url);
+                    if (instance == null) {
+                        Draining drained = draining.get(url);
+                        if (drained != null && !drained.removing()) {
+                            // drained by hand, stays out until added back by hand
+                            continue;
+                        }
+                        instance = join(url);
+                        added++;
                     }
-                } else {
-                    if (isCurrentAvailable) {
-                        markInstanceAsFailed(serviceName, instanceUrl);
+                    next.add(instance);
+                }
+                if (next.isEmpty()) {
+                    return new Change(0, 0);
+                }
+                int drained = 0;
+                for (ServiceInstance instance : instances) {
+                    if (!next.contains(instance)) {
+                        draining.put(instance.getUrl(), new Draining(instance, true, drainDeadline));
+                        drained++;
                     }
                 }
-            } catch (Exception e) {
-                // check if cooldown period passed
-                Map<String, Long> failures = instancesFailureTimes.get(serviceName);
-                Long failureTime = failures.get(instanceUrl);
-
-                if (failureTime == null || (System.currentTimeMillis() - failureTime) > FAILURE_COOLDOWN_IN_MS) {
-                    if (isCurrentAvailable) {
-                        markInstanceAsFailed(serviceName, instanceUrl);
+                if (added > 0 || drained > 0) {
+                    setInstances(next.toArray(ServiceInstance[]::new));
+                }
+                return new Change(added, drained);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private boolean add(String url) {
+            writeLock.lock();
+            try {
+                if (byUrl.containsKey(url)) {
+                    return false;
+                }
+                ServiceInstance[] next = Arrays.copyOf(instances, instances.length + 1);
+                next[next.length - 1] = join(url);
+                setInstances(next);
+                return true;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private boolean drain(String url, boolean remove, long drainDeadline) {
+            writeLock.lock();
+            try {
+                Draining drained = draining.get(url);
+                if (drained != null) {
+                    if (remove && !drained.removing()) {
+                        draining.put(url, new Draining(drained.instance(), true, drainDeadline));
                     }
-                    log.debug("ServiceDiscovery: {} isnatnce {} health chak failed: {}", serviceName, instanceUrl, e.getMessage());
+                    return remove;
                 }
+                ServiceInstance instance = byUrl.get(url);
+                if (instance == null || instances.length == 1) {
+                    return false;
+                }
+                draining.put(url, new Draining(instance, remove, drainDeadline));
+                setInstances(Arrays.stream(instances)
+                        .filter(other -> other != instance)
+                        .toArray(ServiceInstance[]::new));
+                return true;
+            } finally {
+                writeLock.unlock();
             }
         }
-    }
 
-    // get all available isntances
-    public List<String> getAvailableInstances(String serviceName) {
-        Map<String, Boolean> instances = serviceInstances.get(serviceName);
-        if (instances == null) {
-            return Collections.emptyList();
+        // the removed ones that are done, or out of time
+        private List<Draining> sweep(long now) {
+            writeLock.lock();
+            try {
+                if (draining.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                List<Draining> done = new ArrayList<>();
+                draining.values().removeIf(drained -> {
+                    boolean finished = drained.removing()
+                            && (drained.instance().getInFlight() == 0 || now - drained.deadlineNanos() >= 0);
+                    if (finished) {
+                        done.add(drained);
+                    }
+                    return finished;
+                });
+                return done;
+            } finally {
+                writeLock.unlock();
+            }
         }
 
-        return instances.entrySet().stream()
-                .filter(Map.Entry::getValue)
-                .map(Map.Entry::getKey)
-                .toList();
+        private List<Draining> drainingSnapshot() {
+            writeLock.lock();
+            try {
+                return List.copyOf(draining.values());
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        // called under writeLock: a url drained earlier comes back as the same instance, a new one ramps up
+        private ServiceInstance join(String url) {
+            Draining drained = draining.remove(url);
+            if (drained != null) {
+                return drained.instance();
+            }
+            ServiceInstance instance = new ServiceInstance(serviceName, url);
+            if (rampNanos > 0) {
+                instance.startRampUp(System.nanoTime());
+            }
+            return instance;
+        }
+
+        // called under writeLock (or from the constructor)
+        private void setInstances(ServiceInstance[] next) {
+            Map<String, ServiceInstance> urls = new HashMap<>();
+            for (ServiceInstance instance : next) {
+                urls.put(instance.getUrl(), instance);
+            }
+            byUrl = urls;
+            instances = next;
+            publish();
+        }
+
+        // returns true if the state actually changed
+        private boolean setHealthy(ServiceInstance instance, boolean healthy) {
+            writeLock.lock();
+            try {
+                if (instance.isHealthy() == healthy) {
+                    return false;
+                }
+                instance.setHealthy(healthy);
+                publish();
+                return true;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private boolean tryEject(ServiceInstance instance, int maxEjectionPercent) {
+            writeLock.lock();
+            try {
+                if (instance.isEjected()) {
+                    return false;
+                }
+                long ejected = Arrays.stream(instances).filter(ServiceInstance::isEjected).count();
+                if ((ejected + 1) * 100 > (long) instances.length * maxEjectionPercent) {
+                    return false;
+                }
+                instance.setEjected(true);
+                publish();
+                return true;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private boolean returnFromEjection(ServiceInstance instance) {
+            writeLock.lock();
+            try {
+                if (!instance.isEjected()) {
+                    return false;
+                }
+                instance.setEjected(false);
+                instance.startRampUp(System.nanoTime());
+                publish();
+                return true;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        // called under writeLock
+        private void publish() {
+            available = Arrays.stream(instances)
+                    .filter(ServiceInstance::isAvailable)
+                    .toArray(ServiceInstance[]::new);
+        }
     }
 }
@@ -0,0 +1,190 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// one upstream instance of a service, identity is stable for the gateway lifetime
+// also carries the live load stats the load balancers choose by
+public final class ServiceInstance {
+    // weight of the newest sample in the latency average
+    private static final double EWMA_ALPHA = 0.3;
+    // time constant the average decays towards zero with while no samples come in (Finagle's peak EWMA default),
+    // so an instance the balancer stopped picking after a slow spell is tried again
+    private static final double EWMA_DECAY_NANOS = 10_000_000_000.0;
+
+    private final String serviceName;
+    private final String url;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicReference<LatencyEwma> latencyEwma = new AtomicReference<>(new LatencyEwma(0.0, 0));
+    private volatile boolean healthy = true;
+    private volatile long failureTime;
+
+    // passive outlier detection, see OutlierDetector
+    private final AtomicInteger consecutive5xx = new AtomicInteger();
+    private final AtomicInteger consecutiveGatewayErrors = new AtomicInteger();
+    private final AtomicInteger consecutiveSlow = new AtomicInteger();
+    private volatile boolean ejected;
+    private volatile int ejectionCount;
+    private volatile long lastEjectionEndMillis;
+    // System.nanoTime() when the instance came back from ejection, 0 when not ramping up
+    private volatile long rampStartNanos;
+
+    // active health checks, see HealthCheckService
+    private final AtomicInteger consecutiveProbeSuccesses = new AtomicInteger();
+    private final AtomicInteger consecutiveProbeFailures = new AtomicInteger();
+
+    public ServiceInstance(String serviceName, String url) {
+        this.serviceName = serviceName;
+        this.url = url;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    void setHealthy(boolean healthy) {
+        this.healthy = healthy;
+    }
+
+    // healthy and not ejected, i.e. part of the snapshot requests are balanced over
+    public boolean isAvailable() {
+        return healthy && !ejected;
+    }
+
+    public boolean isEjected() {
+        return ejected;
+    }
+
+    void setEjected(boolean ejected) {
+        this.ejected = ejected;
+    }
+
+    int getEjectionCount() {
+        return ejectionCount;
+    }
+
+    void setEjectionCount(int ejectionCount) {
+        this.ejectionCount = ejectionCount;
+    }
+
+    long getLastEjectionEndMillis() {
+        return lastEjectionEndMillis;
+    }
+
+    void setLastEjectionEndMillis(long lastEjectionEndMillis) {
+        this.lastEjectionEndMillis = lastEjectionEndMillis;
+    }
+
+    void startRampUp(long nowNanos) {
+        this.rampStartNanos = nowNanos == 0 ? 1 : nowNanos;
+    }
+
+    // share of its normal traffic a recovered instance gets, grows linearly over the window
+    public double trafficWeight(long rampNanos) {
+        long rampStart = rampStartNanos;
+        if (rampStart == 0) {
+            return 1.0;
+        }
+        long elapsed = System.nanoTime() - rampStart;
+        if (elapsed >= rampNanos) {
+            rampStartNanos = 0;
+            return 1.0;
+        }
+        // never fully starve it, it has to serve requests to prove itself
+        return Math.max(0.1, (double) elapsed / rampNanos);
+    }
+
+    AtomicInteger consecutive5xx() {
+        return consecutive5xx;
+    }
+
+    AtomicInteger consecutiveGatewayErrors() {
+        return consecutiveGatewayErrors;
+    }
+
+    AtomicInteger consecutiveSlow() {
+        return consecutiveSlow;
+    }
+
+    AtomicInteger consecutiveProbeSuccesses() {
+        return consecutiveProbeSuccesses;
+    }
+
+    AtomicInteger consecutiveProbeFailures() {
+        return consecutiveProbeFailures;
+    }
+
+    // a passive verdict starts the health checks' count over, so streaks from before it cannot decide right after
+    void resetProbeStreaks() {
+        consecutiveProbeSuccesses.set(0);
+        consecutiveProbeFailures.set(0);
+    }
+
+    public long getFailureTime() {
+        return failureTime;
+    }
+
+    void setFailureTime(long failureTime) {
+        this.failureTime = failureTime;
+    }
+
+    public void onRequestStart() {
+        inFlight.incrementAndGet();
+    }
+
+    public void onRequestEnd(long latencyNanos) {
+        inFlight.decrementAndGet();
+        recordLatency(latencyNanos, System.nanoTime());
+    }
+
+    void recordLatency(long latencyNanos, long nowNanos) {
+        LatencyEwma current;
+        LatencyEwma next;
+        do {
+            current = latencyEwma.get();
+            double average = current.decayed(nowNanos);
+            // peak sensitive: a slower sample is taken as is, faster ones are averaged in
+            double updated = average == 0.0 || latencyNanos > average
+                    ? latencyNanos
+                    : average + EWMA_ALPHA * (latencyNanos - average);
+            next = new LatencyEwma(updated, nowNanos);
+        } while (!latencyEwma.compareAndSet(current, next));
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public double getLatencyEwmaNanos() {
+        return getLatencyEwmaNanos(System.nanoTime());
+    }
+
+    double getLatencyEwmaNanos(long nowNanos) {
+        return latencyEwma.get().decayed(nowNanos);
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+
+    // latency average in nanos and the System.nanoTime() of the sample that set it
+    private record LatencyEwma(double averageNanos, long sampleNanos) {
+        // the average scaled by exp(-elapsed / decay time) for the time since that sample
+        double decayed(long nowNanos) {
+            long elapsed = nowNanos - sampleNanos;
+            if (averageNanos == 0.0 || elapsed <= 0) {
+                return averageNanos;
+            }
+            return averageNanos * Math.exp(-elapsed / EWMA_DECAY_NANOS);
+        }
+    }
+}
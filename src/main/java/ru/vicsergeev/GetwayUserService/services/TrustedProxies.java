@@ -0,0 +1,98 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+// services.trusted-proxies: the peers whose X-Forwarded-* and Forwarded headers are believed
+// matched against the connection's remote address, never against anything the client sent
+@Component
+public class TrustedProxies {
+    private final List<Network> networks = new ArrayList<>();
+
+    public TrustedProxies(ServicesProperties services) {
+        for (String spec : services.getTrustedProxies()) {
+            networks.add(Network.of(spec.trim()));
+        }
+    }
+
+    public boolean isTrusted(String address) {
+        if (networks.isEmpty() || address == null) {
+            return false;
+        }
+        byte[] peer = literal(address);
+        if (peer == null) {
+            return false;
+        }
+        for (Network network : networks) {
+            if (network.contains(peer)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // null for anything that is not an ip literal, so a host name never triggers a dns lookup
+    private static byte[] literal(String address) {
+        if (address.isEmpty()) {
+            return null;
+        }
+        int radix = address.indexOf(':') >= 0 ? 16 : 10;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (Character.digit(c, radix) < 0 && c != '.' && c != ':') {
+                return null;
+            }
+        }
+        try {
+            // ::ffff:10.0.0.1 comes back as the IPv4 address
+            return InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private record Network(byte[] address, int prefixLength) {
+        static Network of(String spec) {
+            int slash = spec.indexOf('/');
+            byte[] address = literal(slash >= 0 ? spec.substring(0, slash) : spec);
+            if (address == null) {
+                throw new IllegalStateException("services.trusted-proxies: not an ip address or cidr: " + spec);
+            }
+            int prefixLength = address.length * 8;
+            if (slash >= 0) {
+                try {
+                    prefixLength = Integer.parseInt(spec.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    prefixLength = -1;
+                }
+                if (prefixLength < 0 || prefixLength > address.length * 8) {
+                    throw new IllegalStateException("services.trusted-proxies: bad prefix length: " + spec);
+                }
+            }
+            return new Network(address, prefixLength);
+        }
+
+        boolean contains(byte[] peer) {
+            if (peer.length != address.length) {
+                return false;
+            }
+            int whole = prefixLength / 8;
+            for (int i = 0; i < whole; i++) {
+                if (peer[i] != address[i]) {
+                    return false;
+                }
+            }
+            int rest = prefixLength % 8;
+            if (rest == 0) {
+                return true;
+            }
+            int mask = 0xFF << (8 - rest);
+            return (peer[whole] & mask) == (address[whole] & mask);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.NoOpResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.config.UpstreamProtocol;
+import ru.vicsergeev.GetwayUserService.observability.TimedAsyncExecRuntime;
+import ru.vicsergeev.GetwayUserService.observability.TimedExecRuntime;
+import ru.vicsergeev.GetwayUserService.observability.UpstreamMetrics;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@RequiredArgsConstructor
+public class UpstreamClients {
+    private static final Logger log = LoggerFactory.getLogger(UpstreamClients.class);
+    private static final int DEFAULT_MAX_CONN_PER_ROUTE = 50;
+    private static final int DEFAULT_MAX_CONN_TOTAL = 200;
+    // with virtual threads every in-flight call may hold a connection, so the pool
+    // is the real concurrency limit and has to be far above the platform defaults
+    private static final int VIRTUAL_THREADS_MAX_CONN_PER_ROUTE = 500;
+    private static final int VIRTUAL_THREADS_MAX_CONN_TOTAL = 2000;
+
+    private final ServicesProperties services;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final UpstreamMetrics upstreamMetrics;
+
+    private final Map<String, ServiceClients> clients = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        boolean virtualThreads = Threading.VIRTUAL.isActive(environment);
+        if (!virtualThreads && environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            // spring ignores the switch below 21, say so instead of quietly running on platform threads
+            log.warn("UpstreamClients: spring.threads.virtual.enabled is set but the runtime is Java {}, "
+                    + "virtual threads need Java 21+; running on platform threads", Runtime.version().feature());
+        }
+        services.getServices().forEach((serviceName, props) -> {
+            ServiceClients serviceClients = build(serviceName, props, virtualThreads);
+            clients.put(serviceName, serviceClients);
+            bindPoolMetrics(serviceName, "blocking", serviceClients.pool());
+            // the h2c client keeps a single connection per instance, there is no pool to report
+            if (serviceClients.asyncPool() != null) {
+                bindPoolMetrics(serviceName, "async", serviceClients.asyncPool());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clients.values().forEach(serviceClients -> {
+            serviceClients.asyncClient().close(CloseMode.GRACEFUL);
+            serviceClients.httpClient().close(CloseMode.GRACEFUL);
+        });
+    }
+
+    // passes upstream status through as-is instead of raising on 4xx/5xx,
+    // callers decide what counts as an instance failure
+    public RestTemplate restTemplate(String serviceName) {
+        return get(serviceName).restTemplate();
+    }
+
+    // same pool, different response timeout, for routes that override it
+    public RestTemplate restTemplate(String serviceName, int responseTimeout) {
+        ServiceClients serviceClients = get(serviceName);
+        if (responseTimeout == services.getService(serviceName).getResponseTimeout()) {
+            return serviceClients.restTemplate();
+        }
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(serviceClients.httpClient());
+        factory.setReadTimeout(responseTimeout);
+        RestTemplate restTemplate = new RestTemplate(factory);
+        restTemplate.setErrorHandler(new NoOpResponseErrorHandler());
+        return restTemplate;
+    }
+
+    // per request config for the async client, null when the client default applies
+    public RequestConfig requestConfig(String serviceName, int responseTimeout) {
+        ServiceClients serviceClients = get(serviceName);
+        if (responseTimeout == services.getService(serviceName).getResponseTimeout()) {
+            return null;
+        }
+        return RequestConfig.copy(serviceClients.requestConfig())
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeout))
+                .build();
+    }
+
+    public CloseableHttpAsyncClient asyncClient(String serviceName) {
+        return get(serviceName).asyncClient();
+    }
+
+    private ServiceClients get(String serviceName) {
+        ServiceClients serviceClients = clients.get(serviceName);
+        if (serviceClients == null) {
+            throw new IllegalStateException("http clients not initialized for service: " + serviceName);
+        }
+        return serviceClients;
+    }
+
+    private ServiceClients build(String serviceName, ServicesProperties.ServiceProps props, boolean virtualThreads) {
+        ServicesProperties.PoolProps poolProps = props.getPool();
+        int maxPerRoute = poolProps.getMaxPerRoute() != null ? poolProps.getMaxPerRoute()
+                : virtualThreads ? VIRTUAL_THREADS_MAX_CONN_PER_ROUTE : DEFAULT_MAX_CONN_PER_ROUTE;
+        int maxTotal = poolProps.getMaxTotal() != null ? poolProps.getMaxTotal()
+                : virtualThreads ? VIRTUAL_THREADS_MAX_CONN_TOTAL : DEFAULT_MAX_CONN_TOTAL;
+        log.info("UpstreamClients: {} pool {} per route / {} total, keep-alive {} ms, idle eviction {} ms, {}",
+                serviceName, maxPerRoute, maxTotal, poolProps.getKeepAlive(), poolProps.getIdleEviction(), props.getProtocol());
+
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(props.getConnectTimeout()))
+                .setSocketTimeout(Timeout.ofMilliseconds(props.getResponseTimeout()))
+                .setTimeToLive(poolProps.getTimeToLive() < 0 ? null : TimeValue.ofMilliseconds(poolProps.getTimeToLive()))
+                .setValidateAfterInactivity(TimeValue.ofMilliseconds(poolProps.getValidateAfterInactivity()))
+                .build();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(props.getConnectTimeout()))
+                .setResponseTimeout(Timeout.ofMilliseconds(props.getResponseTimeout()))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(poolProps.getKeepAlive()))
+                .build();
+        TimeValue idleEviction = TimeValue.ofMilliseconds(poolProps.getIdleEviction());
+
+        // STRICT pool guards leases with a ReentrantLock, so virtual threads waiting
+        // for a connection park and release their carrier instead of pinning it
+        PoolingHttpClientConnectionManager pool = PoolingHttpClientConnectionManagerBuilder.create()
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setMaxConnTotal(maxTotal)
+                .setDefaultConnectionConfig(connectionConfig)
+                .build();
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(pool)
+                // lease / connect / ttfb / body timings, see UpstreamMetrics
+                .addExecInterceptorBefore(ChainElement.CONNECT.name(), "gateway-timing",
+                        TimedExecRuntime.interceptor(serviceName, upstreamMetrics))
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEviction)
+                // the client's Accept-Encoding goes upstream and encoded bodies come back untouched,
+                // otherwise they are inflated here only for ResponseCompression to gzip them again
+                .disableContentCompression()
+                .build();
+
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        restTemplate.setErrorHandler(new NoOpResponseErrorHandler());
+
+        CloseableHttpAsyncClient asyncClient;
+        PoolingAsyncClientConnectionManager asyncPool = null;
+        if (props.getProtocol() == UpstreamProtocol.H2C) {
+            // one connection per instance carrying every request as a stream, prior knowledge on plain http
+            // (the pooling manager's own multiplexing is still experimental in httpclient 5.5)
+            asyncClient = HttpAsyncClients.customHttp2()
+                    .setDefaultRequestConfig(requestConfig)
+                    .setDefaultConnectionConfig(connectionConfig)
+                    .setH2Config(H2Config.custom().setPushEnabled(false).build())
+                    .addExecInterceptorBefore(ChainElement.CONNECT.name(), "gateway-timing",
+                            TimedAsyncExecRuntime.interceptor(serviceName, upstreamMetrics))
+                    .evictIdleConnections(idleEviction)
+                    .build();
+        } else {
+            asyncPool = PoolingAsyncClientConnectionManagerBuilder.create()
+                    .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                    .setMaxConnPerRoute(maxPerRoute)
+                    .setMaxConnTotal(maxTotal)
+                    .setDefaultConnectionConfig(connectionConfig)
+                    .build();
+
+            asyncClient = HttpAsyncClients.custom()
+                    .setDefaultRequestConfig(requestConfig)
+                    .setConnectionManager(asyncPool)
+                    .addExecInterceptorBefore(ChainElement.CONNECT.name(), "gateway-timing",
+                            TimedAsyncExecRuntime.interceptor(serviceName, upstreamMetrics))
+                    .evictExpiredConnections()
+                    .evictIdleConnections(idleEviction)
+                    .build();
+        }
+        asyncClient.start();
+
+        return new ServiceClients(httpClient, pool, requestConfig, restTemplate, asyncClient, asyncPool);
+    }
+
+    // exported through actuator, e.g. /actuator/metrics/gateway.http.pool.leased?tag=service:user
+    private void bindPoolMetrics(String serviceName, String client, ConnPoolControl<?> pool) {
+        Gauge.builder("gateway.http.pool.leased", pool, p -> p.getTotalStats().getLeased())
+                .description("connections currently leased from the upstream pool")
+                .tag("service", serviceName).tag("client", client)
+                .register(meterRegistry);
+        Gauge.builder("gateway.http.pool.available", pool, p -> p.getTotalStats().getAvailable())
+                .description("idle connections kept in the upstream pool")
+                .tag("service", serviceName).tag("client", client)
+                .register(meterRegistry);
+        Gauge.builder("gateway.http.pool.pending", pool, p -> p.getTotalStats().getPending())
+                .description("requests waiting for an upstream connection")
+                .tag("service", serviceName).tag("client", client)
+                .register(meterRegistry);
+        Gauge.builder("gateway.http.pool.max", pool, p -> p.getTotalStats().getMax())
+                .description("max connections of the upstream pool")
+                .tag("service", serviceName).tag("client", client)
+                .register(meterRegistry);
+    }
+
+    private record ServiceClients(CloseableHttpClient httpClient, PoolingHttpClientConnectionManager pool,
+                                  RequestConfig requestConfig, RestTemplate restTemplate,
+                                  CloseableHttpAsyncClient asyncClient, PoolingAsyncClientConnectionManager asyncPool) {
+    }
+}
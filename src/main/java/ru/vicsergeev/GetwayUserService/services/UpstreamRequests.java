@@ -0,0 +1,174 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import ru.vicsergeev.GetwayUserService.observability.TraceHeaders;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+// building blocks of the upstream request taken from the client request, shared by all forwarding modes
+// public so the benchmarks module can measure them
+public final class UpstreamRequests {
+    public static final String X_FORWARDED_FOR = "X-Forwarded-For";
+    public static final String X_FORWARDED_PROTO = "X-Forwarded-Proto";
+    public static final String X_FORWARDED_HOST = "X-Forwarded-Host";
+    public static final String X_FORWARDED_PORT = "X-Forwarded-Port";
+    public static final String X_FORWARDED_PREFIX = "X-Forwarded-Prefix";
+    public static final String FORWARDED = "Forwarded";
+
+    // hop-by-hop fields (RFC 9110 7.6.1 and the ones older clients still send), meaningful for one connection only
+    static final NameSet HOP_BY_HOP = new NameSet("Connection", "Proxy-Connection", "Keep-Alive", "TE",
+            "Transfer-Encoding", "Upgrade", "Trailer", "Proxy-Authenticate", "Proxy-Authorization");
+    // plus what the upstream client sets itself (host from the url, content length from the body it sends),
+    // the trace headers, which propagate replaces anyway, and the client priority header earlier versions
+    // trusted: priority is route config now, a client sending it is not passed on as if the gateway had
+    private static final NameSet NOT_FORWARDED = HOP_BY_HOP.with("Host", "Content-Length",
+            TraceHeaders.REQUEST_ID, TraceHeaders.TRACEPARENT, "X-Gateway-Priority");
+
+    private UpstreamRequests() {
+    }
+
+    // every value of every end-to-end header, then the trace headers
+    public static void copyHeaders(HttpServletRequest request, HttpHeaders headers) {
+        Set<String> listed = connectionOptions(request.getHeader(HttpHeaders.CONNECTION));
+        Enumeration<String> headerNames = request.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+            String name = headerNames.nextElement();
+            if (NOT_FORWARDED.contains(name) || listed.contains(name)) {
+                continue;
+            }
+            Enumeration<String> values = request.getHeaders(name);
+            while (values.hasMoreElements()) {
+                headers.add(name, values.nextElement());
+            }
+        }
+        TraceHeaders.propagate(request, headers);
+    }
+
+    // X-Forwarded-* and RFC 7239 Forwarded for the client connection. From a trusted proxy For and Forwarded
+    // extend what it sent and Proto/Host/Port/Prefix are left alone when already set, so the outermost values win;
+    // from anyone else whatever the client sent is replaced, a client cannot pick the address the upstream sees
+    // prefix is the path prefix the gateway stripped, null when the path goes upstream unchanged
+    public static void addForwarded(HttpServletRequest request, HttpHeaders headers, String prefix,
+                                    boolean trustedPeer) {
+        if (!trustedPeer) {
+            removeForwarded(headers);
+        }
+        String client = request.getRemoteAddr();
+        String proto = request.getScheme();
+        String host = request.getHeader(HttpHeaders.HOST);
+        if (host == null) {
+            host = request.getServerName() + ":" + request.getServerPort();
+        }
+        append(headers, X_FORWARDED_FOR, client);
+        setIfAbsent(headers, X_FORWARDED_PROTO, proto);
+        setIfAbsent(headers, X_FORWARDED_HOST, host);
+        setIfAbsent(headers, X_FORWARDED_PORT, String.valueOf(request.getServerPort()));
+        if (prefix != null && !prefix.isEmpty()) {
+            setIfAbsent(headers, X_FORWARDED_PREFIX, prefix);
+        }
+        append(headers, FORWARDED, "for=" + node(client) + ";proto=" + proto + ";host=" + quoted(host));
+    }
+
+    // client supplied forwarding headers, dropped for untrusted peers even on routes that add none
+    public static void removeForwarded(HttpHeaders headers) {
+        headers.remove(X_FORWARDED_FOR);
+        headers.remove(X_FORWARDED_PROTO);
+        headers.remove(X_FORWARDED_HOST);
+        headers.remove(X_FORWARDED_PORT);
+        headers.remove(X_FORWARDED_PREFIX);
+        headers.remove(FORWARDED);
+    }
+
+    // "?a=b" or "" when the request has no query
+    public static String queryString(HttpServletRequest request) {
+        String qeury = request.getQueryString();
+        return qeury != null ? "?" + qeury : "";
+    }
+
+    // extra hop-by-hop fields named in Connection; the usual keep-alive / close costs no allocation
+    static Set<String> connectionOptions(String connection) {
+        if (connection == null || connection.equalsIgnoreCase("keep-alive") || connection.equalsIgnoreCase("close")) {
+            return Collections.emptySet();
+        }
+        Set<String> options = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (String option : connection.split(",")) {
+            options.add(option.trim());
+        }
+        return options;
+    }
+
+    static Set<String> connectionOptions(List<String> connection) {
+        return connection.isEmpty() ? Collections.emptySet() : connectionOptions(String.join(",", connection));
+    }
+
+    private static void append(HttpHeaders headers, String name, String value) {
+        List<String> existing = headers.get(name);
+        headers.set(name, existing == null || existing.isEmpty() ? value : String.join(", ", existing) + ", " + value);
+    }
+
+    private static void setIfAbsent(HttpHeaders headers, String name, String value) {
+        if (!headers.containsKey(name)) {
+            headers.set(name, value);
+        }
+    }
+
+    // IPv6 addresses go in brackets and quotes, e.g. for="[2001:db8::1]"
+    private static String node(String address) {
+        return address.indexOf(':') >= 0 ? "\"[" + address + "]\"" : address;
+    }
+
+    // host:port is not a token, it needs quoting
+    private static String quoted(String value) {
+        return value.indexOf(':') >= 0 ? "\"" + value + "\"" : value;
+    }
+
+    // fixed set of header names bucketed by length: a lookup is an array index and a case-insensitive
+    // compare against the one or two names of that length, no lowercasing or hashing of the name
+    static final class NameSet {
+        private final String[] names;
+        private final String[][] byLength;
+
+        NameSet(String... names) {
+            this.names = names;
+            int maxLength = 0;
+            for (String name : names) {
+                maxLength = Math.max(maxLength, name.length());
+            }
+            byLength = new String[maxLength + 1][];
+            for (String name : names) {
+                String[] bucket = byLength[name.length()];
+                bucket = bucket == null ? new String[1] : Arrays.copyOf(bucket, bucket.length + 1);
+                bucket[bucket.length - 1] = name;
+                byLength[name.length()] = bucket;
+            }
+        }
+
+        NameSet with(String... more) {
+            String[] all = Arrays.copyOf(names, names.length + more.length);
+            System.arraycopy(more, 0, all, names.length, more.length);
+            return new NameSet(all);
+        }
+
+        boolean contains(String name) {
+            if (name.length() >= byLength.length) {
+                return false;
+            }
+            String[] bucket = byLength[name.length()];
+            if (bucket == null) {
+                return false;
+            }
+            for (String candidate : bucket) {
+                if (candidate.equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
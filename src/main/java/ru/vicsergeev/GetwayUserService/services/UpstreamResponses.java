@@ -0,0 +1,90 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import ru.vicsergeev.GetwayUserService.routing.HeaderRules;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+// upstream response headers on their way to the client: hop-by-hop fields dropped, route rules applied
+// public so the benchmarks module can measure them
+public final class UpstreamResponses {
+
+    private UpstreamResponses() {
+    }
+
+    // the response itself when there is nothing to drop or edit, the common case
+    public static ResponseEntity<String> filter(ResponseEntity<String> response, HeaderRules rules) {
+        HttpHeaders upstream = response.getHeaders();
+        if (rules.isEmpty() && !hasHopByHop(upstream)) {
+            return response;
+        }
+        return new ResponseEntity<>(response.getBody(), headers(upstream, rules), response.getStatusCode());
+    }
+
+    // streaming mode: straight onto the servlet response, framing is handled by the container
+    public static void copyHeaders(HttpHeaders upstream, HeaderRules rules, HttpServletResponse response) {
+        HttpHeaders headers = rules.isEmpty() ? upstream : headers(upstream, rules);
+        Set<String> listed = UpstreamRequests.connectionOptions(upstream.getConnection());
+        headers.forEach((name, values) -> {
+            if (!UpstreamRequests.HOP_BY_HOP.contains(name) && !listed.contains(name)) {
+                values.forEach(value -> response.addHeader(name, value));
+            }
+        });
+    }
+
+    // buffered and async modes hold bodies as Strings; the client's Accept-Encoding goes upstream as is,
+    // so an encoded body is carried byte for byte as ISO-8859-1 chars and never decoded by the gateway
+    public static String body(byte[] bytes, HttpHeaders headers) {
+        return bytes != null ? new String(bytes, charset(headers)) : null;
+    }
+
+    // the bytes body(...) was made of
+    public static byte[] bytes(String body, HttpHeaders headers) {
+        return body.getBytes(charset(headers));
+    }
+
+    public static boolean isEncoded(HttpHeaders headers) {
+        String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        return contentEncoding != null && !contentEncoding.equalsIgnoreCase("identity");
+    }
+
+    // utf-8 without a charset, what the string converter writes back to the client
+    private static Charset charset(HttpHeaders headers) {
+        if (isEncoded(headers)) {
+            return StandardCharsets.ISO_8859_1;
+        }
+        MediaType contentType;
+        try {
+            contentType = headers.getContentType();
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+        return contentType != null && contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+    }
+
+    private static HttpHeaders headers(HttpHeaders upstream, HeaderRules rules) {
+        HttpHeaders headers = new HttpHeaders();
+        Set<String> listed = UpstreamRequests.connectionOptions(upstream.getConnection());
+        upstream.forEach((name, values) -> {
+            if (!UpstreamRequests.HOP_BY_HOP.contains(name) && !listed.contains(name)) {
+                headers.addAll(name, values);
+            }
+        });
+        rules.apply(headers);
+        return headers;
+    }
+
+    private static boolean hasHopByHop(HttpHeaders headers) {
+        for (String name : headers.keySet()) {
+            if (UpstreamRequests.HOP_BY_HOP.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
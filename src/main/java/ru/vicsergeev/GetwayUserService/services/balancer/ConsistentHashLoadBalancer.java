@@ -0,0 +1,129 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+// ring of virtual nodes hashed from the instance urls: every gateway maps a key the same way, and an instance
+// failing, recovering or leaving only moves its own keys. Bounded load (consistent hashing with bounded loads,
+// Mirrokni et al.): an instance above load-factor x the average in-flight is passed over for the next one
+// on the ring, so a hot key cannot pile onto one instance. Requests without a key fall back to power of two.
+// Slow start: an instance ramping up after ejection or joining takes only the keys whose own fraction is below
+// its weight and the rest walk on to the next instance, so the same key keeps landing on the same instance and
+// the keys it takes only grow with the weight
+public class ConsistentHashLoadBalancer extends PowerOfTwoChoicesLoadBalancer {
+    private final int virtualNodes;
+    private final double loadFactor;
+    // slow start window of the service, 0 when instances take full traffic at once
+    private final long rampNanos;
+    // rebuilt when the snapshot it was built from is replaced, i.e. on health and membership changes
+    private volatile Ring ring;
+
+    public ConsistentHashLoadBalancer(int virtualNodes, double loadFactor) {
+        this(virtualNodes, loadFactor, 0);
+    }
+
+    public ConsistentHashLoadBalancer(int virtualNodes, double loadFactor, long rampNanos) {
+        this.virtualNodes = Math.max(1, virtualNodes);
+        this.loadFactor = loadFactor;
+        this.rampNanos = rampNanos;
+    }
+
+    @Override
+    public ServiceInstance choose(ServiceInstance[] instances, String hashKey) {
+        if (instances.length == 1) {
+            return instances[0];
+        }
+        Ring current = ring;
+        if (current == null || current.instances != instances) {
+            // racing rebuilds produce equal rings, whichever is stored last wins
+            current = new Ring(instances, virtualNodes);
+            ring = current;
+        }
+        long hash = hash(hashKey);
+        int start = current.search(hash);
+        if (loadFactor <= 0 && rampNanos <= 0) {
+            return instances[current.owners[start]];
+        }
+        // capacity counts this request as well: ceil(factor x (in flight + 1) / instances), with a factor
+        // over 1 some instance is always below it
+        int capacity = Integer.MAX_VALUE;
+        if (loadFactor > 0) {
+            long total = 1;
+            for (ServiceInstance instance : instances) {
+                total += instance.getInFlight();
+            }
+            capacity = (int) Math.ceil(loadFactor * total / instances.length);
+        }
+        // uniform in [0, 1) and independent of the ring position
+        double fraction = ((hash * 0x9E3779B97F4A7C15L) >>> 11) * 0x1.0p-53;
+        ServiceInstance unramped = null;
+        int points = current.owners.length;
+        for (int i = 0; i < points; i++) {
+            ServiceInstance candidate = instances[current.owners[(start + i) % points]];
+            if (candidate.getInFlight() >= capacity) {
+                continue;
+            }
+            if (rampNanos <= 0 || fraction < candidate.trafficWeight(rampNanos)) {
+                return candidate;
+            }
+            if (unramped == null) {
+                unramped = candidate;
+            }
+        }
+        // every instance below capacity is ramping and none takes this key
+        return unramped != null ? unramped : choose(instances);
+    }
+
+    // FNV-1a over the chars, then the murmur3 finalizer for the avalanche FNV lacks; no allocation
+    static long hash(CharSequence value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // sorted points and the index into instances owning each
+    private static final class Ring {
+        private final ServiceInstance[] instances;
+        private final long[] points;
+        private final int[] owners;
+
+        private Ring(ServiceInstance[] instances, int virtualNodes) {
+            this.instances = instances;
+            int size = instances.length * virtualNodes;
+            long[] hashes = new long[size];
+            for (int i = 0; i < size; i++) {
+                hashes[i] = hash(instances[i / virtualNodes].getUrl() + "#" + i % virtualNodes);
+            }
+            int[] order = IntStream.range(0, size).boxed()
+                    .sorted(Comparator.comparingLong(i -> hashes[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            this.points = new long[size];
+            this.owners = new int[size];
+            for (int i = 0; i < size; i++) {
+                points[i] = hashes[order[i]];
+                owners[i] = order[i] / virtualNodes;
+            }
+        }
+
+        // first point at or after the hash, wrapping around
+        private int search(long hash) {
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index == points.length ? 0 : index;
+        }
+    }
+}
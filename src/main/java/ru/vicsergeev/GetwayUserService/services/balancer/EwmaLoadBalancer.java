@@ -0,0 +1,13 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+// power of two choices over expected wait: latency average x (in-flight + 1),
+// a GC-pausing or undersized instance gets fewer requests until it catches up
+public class EwmaLoadBalancer extends PowerOfTwoChoicesLoadBalancer {
+
+    @Override
+    protected double cost(ServiceInstance instance) {
+        return instance.getLatencyEwmaNanos() * (instance.getInFlight() + 1);
+    }
+}
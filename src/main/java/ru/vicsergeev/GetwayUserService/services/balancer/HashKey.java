@@ -0,0 +1,94 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.Locale;
+
+// where the consistent hash key of a request comes from, services.backends.<name>.hash.key:
+// path:<n> is the nth segment of the upstream path (path:2 for /users/{id}/**), header:<name>, cookie:<name>
+public final class HashKey {
+    private enum Source { PATH, HEADER, COOKIE }
+
+    private final Source source;
+    private final String name;
+    private final int segment;
+
+    private HashKey(Source source, String name, int segment) {
+        this.source = source;
+        this.name = name;
+        this.segment = segment;
+    }
+
+    public static HashKey of(String spec) {
+        int colon = spec != null ? spec.indexOf(':') : -1;
+        String value = colon > 0 ? spec.substring(colon + 1).trim() : "";
+        if (value.isEmpty()) {
+            throw new IllegalStateException("hash key must be path:<n>, header:<name> or cookie:<name>: " + spec);
+        }
+        return switch (spec.substring(0, colon).trim()) {
+            case "path" -> {
+                int segment;
+                try {
+                    segment = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    segment = 0;
+                }
+                if (segment < 1) {
+                    throw new IllegalStateException("hash key path segment must be a number from 1: " + spec);
+                }
+                yield new HashKey(Source.PATH, null, segment);
+            }
+            case "header" -> new HashKey(Source.HEADER, value, 0);
+            case "cookie" -> new HashKey(Source.COOKIE, value, 0);
+            default -> throw new IllegalStateException(
+                    "hash key must be path:<n>, header:<name> or cookie:<name>: " + spec);
+        };
+    }
+
+    // null when the request carries no key, it is balanced without affinity
+    public String extract(String upstreamPath, HttpServletRequest request) {
+        return switch (source) {
+            case PATH -> segment(upstreamPath, segment);
+            case HEADER -> request.getHeader(name);
+            case COOKIE -> cookie(request, name);
+        };
+    }
+
+    // nth non-empty segment, /users/42/orders: 1 is users, 2 is 42
+    static String segment(String path, int n) {
+        int count = 0;
+        int start = -1;
+        for (int i = 0; i <= path.length(); i++) {
+            boolean boundary = i == path.length() || path.charAt(i) == '/';
+            if (!boundary) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                if (++count == n) {
+                    return path.substring(start, i);
+                }
+                start = -1;
+            }
+        }
+        return null;
+    }
+
+    private static String cookie(HttpServletRequest request, String name) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (name.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return source == Source.PATH ? "path:" + segment : source.name().toLowerCase(Locale.ROOT) + ":" + name;
+    }
+}
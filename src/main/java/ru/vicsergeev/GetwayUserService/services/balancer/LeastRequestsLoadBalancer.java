@@ -0,0 +1,27 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LeastRequestsLoadBalancer implements LoadBalancer {
+    // rotating scan start, so ties do not always go to the first instance
+    private final AtomicInteger offset = new AtomicInteger(0);
+
+    @Override
+    public ServiceInstance choose(ServiceInstance[] instances) {
+        int length = instances.length;
+        int start = Math.floorMod(offset.getAndIncrement(), length);
+        ServiceInstance best = instances[start];
+        int bestInFlight = best.getInFlight();
+        for (int i = 1; i < length && bestInFlight > 0; i++) {
+            ServiceInstance candidate = instances[(start + i) % length];
+            int inFlight = candidate.getInFlight();
+            if (inFlight < bestInFlight) {
+                best = candidate;
+                bestInFlight = inFlight;
+            }
+        }
+        return best;
+    }
+}
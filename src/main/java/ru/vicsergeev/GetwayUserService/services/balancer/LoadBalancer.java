@@ -0,0 +1,38 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import ru.vicsergeev.GetwayUserService.config.LoadBalancerType;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+// picks one instance out of the current healthy snapshot; called on every proxied
+// request, implementations must be thread safe and must not allocate
+public interface LoadBalancer {
+
+    // instances is never empty and must not be modified
+    ServiceInstance choose(ServiceInstance[] instances);
+
+    // hashKey from the service's HashKey, never null; only the consistent hash balancer uses it
+    default ServiceInstance choose(ServiceInstance[] instances, String hashKey) {
+        return choose(instances);
+    }
+
+    static LoadBalancer create(LoadBalancerType type) {
+        return create(type, new ServicesProperties.HashProps());
+    }
+
+    static LoadBalancer create(LoadBalancerType type, ServicesProperties.HashProps hash) {
+        return create(type, hash, 0);
+    }
+
+    // rampNanos is the slow start window, the consistent hash balancer applies it per key itself
+    static LoadBalancer create(LoadBalancerType type, ServicesProperties.HashProps hash, long rampNanos) {
+        return switch (type) {
+            case ROUND_ROBIN -> new RoundRobinLoadBalancer();
+            case LEAST_REQUESTS -> new LeastRequestsLoadBalancer();
+            case POWER_OF_TWO -> new PowerOfTwoChoicesLoadBalancer();
+            case EWMA -> new EwmaLoadBalancer();
+            case CONSISTENT_HASH -> new ConsistentHashLoadBalancer(hash.getVirtualNodes(), hash.getLoadFactor(),
+                    rampNanos);
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// two distinct random instances, the one with the lower cost wins
+public class PowerOfTwoChoicesLoadBalancer implements LoadBalancer {
+
+    @Override
+    public ServiceInstance choose(ServiceInstance[] instances) {
+        int length = instances.length;
+        if (length == 1) {
+            return instances[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(length);
+        // second index drawn from the remaining length - 1 slots, never equal to first
+        int second = random.nextInt(length - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceInstance a = instances[first];
+        ServiceInstance b = instances[second];
+        return cost(b) < cost(a) ? b : a;
+    }
+
+    protected double cost(ServiceInstance instance) {
+        return instance.getInFlight();
+    }
+}
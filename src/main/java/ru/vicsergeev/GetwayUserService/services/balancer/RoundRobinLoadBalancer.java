@@ -0,0 +1,14 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoundRobinLoadBalancer implements LoadBalancer {
+    private final AtomicInteger index = new AtomicInteger(0);
+
+    @Override
+    public ServiceInstance choose(ServiceInstance[] instances) {
+        return instances[Math.floorMod(index.getAndIncrement(), instances.length)];
+    }
+}
@@ -0,0 +1,23 @@
+package ru.vicsergeev.GetwayUserService.services.discovery;
+
+import java.util.List;
+
+// where instance lists come from at runtime, on top of services.backends[].instances; the file source is built in
+// when services.discovery.file is set, DiscoverySource beans are started next to it (e.g. one polling a registry)
+public interface DiscoverySource {
+
+    // called once, after the configured instances are registered
+    void start(Listener listener);
+
+    default void stop() {
+    }
+
+    // takes the complete instance list of one service, callable from any thread
+    @FunctionalInterface
+    interface Listener {
+
+        // replaces what the service had; null when the source no longer knows the service,
+        // membership goes back to the configured instances
+        void onInstances(String serviceName, List<String> urls);
+    }
+}
@@ -0,0 +1,191 @@
+package ru.vicsergeev.GetwayUserService.services.discovery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// services.discovery.file: one file, or a directory of *.instances files; the service is the file name
+// (user.instances), one url per line, # comments. Changes are picked up from WatchService events, and by
+// a full re-read every reload-interval where the file system delivers none (network and some container mounts)
+// write by rename (mv user.tmp user.instances) so a reload never sees half a file
+public class FileDiscoverySource implements DiscoverySource {
+    private static final Logger log = LoggerFactory.getLogger(FileDiscoverySource.class);
+    static final String EXTENSION = ".instances";
+    // editors and copies fire a few events per change, they are read once after this
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Path path;
+    private final long reloadIntervalMs;
+    // last list passed on per service, only touched by the watcher thread after start
+    private final Map<String, List<String>> published = new HashMap<>();
+    private volatile boolean running;
+    private Listener listener;
+    private volatile WatchService watchService;
+    private Thread watcher;
+
+    public FileDiscoverySource(Path path, long reloadIntervalMs) {
+        this.path = path.toAbsolutePath();
+        this.reloadIntervalMs = reloadIntervalMs;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        // first read on the caller, membership is in place before traffic arrives
+        reload();
+        Path directory = Files.isDirectory(path) ? path : path.getParent();
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | RuntimeException e) {
+            log.warn("FileDiscoverySource: cannot watch {}, re-reading it every {} ms: {}", directory, reloadIntervalMs,
+                    e.getMessage());
+            closeWatchService();
+        }
+        running = true;
+        watcher = new Thread(this::watch, "discovery-file");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("FileDiscoverySource: watching {}", path);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        closeWatchService();
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    private void watch() {
+        while (running) {
+            WatchService events = watchService;
+            try {
+                if (events == null) {
+                    Thread.sleep(reloadIntervalMs);
+                } else {
+                    WatchKey key = events.poll(reloadIntervalMs, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        Thread.sleep(SETTLE_MILLIS);
+                        do {
+                            key.pollEvents();
+                            key.reset();
+                        } while ((key = events.poll()) != null);
+                    }
+                }
+                reload();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.warn("FileDiscoverySource: reloading {} failed: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    // passes on only the services whose list changed, so the periodic re-read costs a directory listing
+    private void reload() {
+        Map<String, List<String>> current;
+        try {
+            current = read();
+        } catch (IOException e) {
+            // keep what was read last, a file being replaced can be briefly missing
+            log.warn("FileDiscoverySource: cannot read {}: {}", path, e.getMessage());
+            return;
+        }
+        current.forEach((serviceName, urls) -> {
+            if (!urls.equals(published.get(serviceName))) {
+                published.put(serviceName, urls);
+                listener.onInstances(serviceName, urls);
+            }
+        });
+        published.keySet().removeIf(serviceName -> {
+            if (current.containsKey(serviceName)) {
+                return false;
+            }
+            listener.onInstances(serviceName, null);
+            return true;
+        });
+    }
+
+    private Map<String, List<String>> read() throws IOException {
+        Map<String, List<String>> lists = new HashMap<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + EXTENSION)) {
+                for (Path file : files) {
+                    if (Files.isRegularFile(file)) {
+                        lists.put(serviceName(file), parse(file));
+                    }
+                }
+            }
+        } else if (Files.isRegularFile(path)) {
+            lists.put(serviceName(path), parse(path));
+        }
+        return lists;
+    }
+
+    private static String serviceName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static List<String> parse(Path file) throws IOException {
+        List<String> urls = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int comment = line.indexOf('#');
+            String url = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (url.isEmpty()) {
+                continue;
+            }
+            if (url.endsWith("/")) {
+                url = url.substring(0, url.length() - 1);
+            }
+            if (!isUpstreamUrl(url)) {
+                log.warn("FileDiscoverySource: {} skipped, not an http(s) url: {}", file.getFileName(), url);
+                continue;
+            }
+            if (!urls.contains(url)) {
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+
+    static boolean isUpstreamUrl(String url) {
+        try {
+            URI uri = URI.create(url);
+            return ("http".equals(uri.getScheme()) || "https".equals(uri.getScheme())) && uri.getHost() != null;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void closeWatchService() {
+        WatchService events = watchService;
+        watchService = null;
+        if (events != null) {
+            try {
+                events.close();
+            } catch (IOException ignored) {
+                // nothing left to release
+            }
+        }
+    }
+}
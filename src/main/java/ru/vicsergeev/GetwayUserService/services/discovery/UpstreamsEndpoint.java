@@ -0,0 +1,114 @@
+package ru.vicsergeev.GetwayUserService.services.discovery;
+
+import org.springframework.boot.actuate.endpoint.Access;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.services.ServiceDiscoveryManager;
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// /actuator/upstreams: instances per service, and membership changes at runtime
+//   POST   /actuator/upstreams/{service} {"url": "...", "action": "add" | "drain"}
+//   DELETE /actuator/upstreams/{service}?url=...  drains, then forgets the instance
+// a discovery source overwrites these with its next change to the service
+// writes change routing and nothing authenticates them: not exposed by default, and read-only until
+// management.endpoint.upstreams.access is unrestricted, with management.server on a loopback address
+@Component
+@Endpoint(id = "upstreams", defaultAccess = Access.READ_ONLY)
+@RequiredArgsConstructor
+public class UpstreamsEndpoint {
+    private final ServicesProperties services;
+    private final ServiceDiscoveryManager serviceDiscovery;
+
+    @ReadOperation
+    public Map<String, List<InstanceView>> upstreams() {
+        Map<String, List<InstanceView>> upstreams = new LinkedHashMap<>();
+        for (String serviceName : services.getServices().keySet()) {
+            upstreams.put(serviceName, instances(serviceName));
+        }
+        return upstreams;
+    }
+
+    // null answers 404 for unknown services
+    @ReadOperation
+    public List<InstanceView> service(@Selector String service) {
+        return services.getServices().containsKey(service) ? instances(service) : null;
+    }
+
+    @WriteOperation
+    public ChangeView update(@Selector String service, String url, String action) {
+        if (!services.getServices().containsKey(service)) {
+            return null;
+        }
+        String instanceUrl = normalize(url);
+        if (action == null || action.isBlank()) {
+            throw new InvalidEndpointRequestException("action is required: add or drain", "missing action");
+        }
+        boolean changed = switch (action.trim()) {
+            case "add" -> {
+                if (!FileDiscoverySource.isUpstreamUrl(instanceUrl)) {
+                    throw new InvalidEndpointRequestException("url must be an http(s) url with a host: " + instanceUrl,
+                            "invalid url");
+                }
+                yield serviceDiscovery.addInstance(service, instanceUrl);
+            }
+            case "drain" -> serviceDiscovery.drainInstance(service, instanceUrl, false);
+            default -> throw new InvalidEndpointRequestException("action must be add or drain: " + action,
+                    "unknown action");
+        };
+        return new ChangeView(changed, instances(service));
+    }
+
+    @DeleteOperation
+    public ChangeView remove(@Selector String service, String url) {
+        if (!services.getServices().containsKey(service)) {
+            return null;
+        }
+        boolean changed = serviceDiscovery.drainInstance(service, normalize(url), true);
+        return new ChangeView(changed, instances(service));
+    }
+
+    private List<InstanceView> instances(String serviceName) {
+        List<InstanceView> views = new ArrayList<>();
+        for (ServiceInstance instance : serviceDiscovery.getInstances(serviceName)) {
+            String state = instance.isEjected() ? "ejected" : instance.isHealthy() ? "available" : "unhealthy";
+            views.add(InstanceView.of(instance, state));
+        }
+        for (ServiceDiscoveryManager.Draining drained : serviceDiscovery.getDraining(serviceName)) {
+            views.add(InstanceView.of(drained.instance(), drained.removing() ? "removing" : "drained"));
+        }
+        return views;
+    }
+
+    // a missing or blank url is a bad request, not an instance that happens to be unknown
+    private static String normalize(String url) {
+        if (url == null || url.isBlank()) {
+            throw new InvalidEndpointRequestException("url is required", "missing url");
+        }
+        String trimmed = url.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+
+    public record InstanceView(String url, String state, int inFlight, double latencyMillis) {
+        private static InstanceView of(ServiceInstance instance, String state) {
+            return new InstanceView(instance.getUrl(), state, instance.getInFlight(),
+                    instance.getLatencyEwmaNanos() / 1_000_000.0);
+        }
+    }
+
+    // changed is false when there was nothing to do, e.g. adding a known instance or draining the last one
+    public record ChangeView(boolean changed, List<InstanceView> instances) {
+    }
+}
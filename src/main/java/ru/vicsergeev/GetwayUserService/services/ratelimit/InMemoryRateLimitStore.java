@@ -0,0 +1,149 @@
+package ru.vicsergeev.GetwayUserService.services.ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// token bucket per key kept as a single long, the time the bucket is full again (GCRA):
+// a request moves it one interval forward and is allowed while it stays within burst of now,
+// so an update is one CAS and an existing key costs no allocation
+// keys of all scopes are split over one set of shards, each holding its share of max-keys, so the budget is
+// global and the size check and the idle sweep only ever touch one shard;
+// a full shard turns new keys away (fails closed), known keys keep their buckets
+public class InMemoryRateLimitStore implements RateLimitStore {
+    private static final int SHARDS = 64;
+    // a full shard sweeps itself on a new key at most this often, the sweep is linear in its size
+    private static final long FULL_SWEEP_INTERVAL = 1_000_000_000L;
+
+    private final LongSupplier clock;
+    private final long origin;
+    private final Shard[] shards = new Shard[SHARDS];
+    private final LongAdder overflows = new LongAdder();
+
+    public InMemoryRateLimitStore(int maxKeys) {
+        this(maxKeys, System::nanoTime);
+    }
+
+    // clock in nanos; tests pass a manual one to step time
+    public InMemoryRateLimitStore(int maxKeys, LongSupplier clock) {
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+        int maxKeysPerShard = Math.max(1, maxKeys / SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(maxKeysPerShard);
+        }
+    }
+
+    @Override
+    public long tryAcquire(String scope, String key, RateLimitPolicy policy) {
+        long now = now();
+        Shard shard = shard(scope, key);
+        AtomicLong fullAt = shard.bucket(scope, key, now);
+        if (fullAt == null) {
+            // out of room even after a sweep: letting new keys through unmetered would let a client
+            // that mints keys (random api keys, spoofed addresses) bypass the limit, so it waits for the next sweep
+            overflows.increment();
+            return Math.max(policy.intervalNanos(), shard.lastFullSweep + FULL_SWEEP_INTERVAL - now);
+        }
+        long interval = policy.intervalNanos();
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + interval;
+            long wait = next - policy.burstNanos() - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // drops keys whose bucket has refilled: a full bucket and a missing key behave the same,
+    // so nothing is lost (a request racing the removal may get one extra token at most)
+    public void sweep() {
+        long now = now();
+        for (Shard shard : shards) {
+            shard.sweep(now);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Shard shard : shards) {
+            size += shard.size.get();
+        }
+        return size;
+    }
+
+    // requests of new keys rejected because the store was full
+    public long overflows() {
+        return overflows.sum();
+    }
+
+    // never negative, so a fresh bucket (0) is always full
+    private long now() {
+        return clock.getAsLong() - origin;
+    }
+
+    // the same client key of two routes usually lands in different shards
+    private Shard shard(String scope, String key) {
+        int h = key.hashCode() * 31 + scope.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARDS - 1)];
+    }
+
+    private static final class Shard {
+        // scope -> key -> bucket
+        private final Map<String, ConcurrentHashMap<String, AtomicLong>> scopes = new ConcurrentHashMap<>();
+        // keys over all scopes of the shard
+        private final AtomicInteger size = new AtomicInteger();
+        private final int maxKeys;
+        private volatile long lastFullSweep = -FULL_SWEEP_INTERVAL;
+
+        private Shard(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+
+        // null when the shard is full
+        private AtomicLong bucket(String scope, String key, long now) {
+            ConcurrentHashMap<String, AtomicLong> keys = scopes.get(scope);
+            if (keys == null) {
+                keys = scopes.computeIfAbsent(scope, s -> new ConcurrentHashMap<>());
+            }
+            AtomicLong bucket = keys.get(key);
+            if (bucket != null) {
+                return bucket;
+            }
+            if (size.get() >= maxKeys) {
+                if (now - lastFullSweep < FULL_SWEEP_INTERVAL) {
+                    return null;
+                }
+                lastFullSweep = now;
+                sweep(now);
+                if (size.get() >= maxKeys) {
+                    return null;
+                }
+            }
+            AtomicLong created = new AtomicLong();
+            bucket = keys.putIfAbsent(key, created);
+            if (bucket != null) {
+                return bucket;
+            }
+            size.incrementAndGet();
+            return created;
+        }
+
+        private void sweep(long now) {
+            for (ConcurrentHashMap<String, AtomicLong> keys : scopes.values()) {
+                keys.forEach((key, fullAt) -> {
+                    if (fullAt.get() <= now && keys.remove(key, fullAt)) {
+                        size.decrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ru.vicsergeev.GetwayUserService.services.ratelimit;
+
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+// compiled route limit: one request per interval, up to burst requests at once
+// keyHeader null means clients are told apart by remote address
+public record RateLimitPolicy(long intervalNanos, long burstNanos, String keyHeader) {
+    private static final String HEADER_KEY = "header:";
+
+    // null when the route is not rate limited
+    public static RateLimitPolicy of(String routeId, ServicesProperties.RateLimitProps props) {
+        if (!props.isEnabled()) {
+            return null;
+        }
+        if (props.getRequestsPerSecond() <= 0) {
+            throw new IllegalStateException("route " + routeId + ": rate-limit.requests-per-second must be positive");
+        }
+        long interval = Math.max(1, (long) (1_000_000_000L / props.getRequestsPerSecond()));
+        int burst = props.getBurst() > 0 ? props.getBurst() : Math.max(1, (int) Math.ceil(props.getRequestsPerSecond()));
+
+        String key = props.getKey();
+        String keyHeader;
+        if (key == null || key.equalsIgnoreCase("ip")) {
+            keyHeader = null;
+        } else if (key.regionMatches(true, 0, HEADER_KEY, 0, HEADER_KEY.length()) && key.length() > HEADER_KEY.length()) {
+            keyHeader = key.substring(HEADER_KEY.length()).trim();
+        } else {
+            throw new IllegalStateException("route " + routeId + ": rate-limit.key must be ip or header:<name>, got " + key);
+        }
+        return new RateLimitPolicy(interval, interval * burst, keyHeader);
+    }
+}
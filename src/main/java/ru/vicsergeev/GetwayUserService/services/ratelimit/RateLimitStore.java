@@ -0,0 +1,11 @@
+package ru.vicsergeev.GetwayUserService.services.ratelimit;
+
+// where rate limit state lives; in memory by default, a RateLimitStore bean replaces it
+// (e.g. one backed by a store shared between gateway instances)
+// called on every rate limited request, implementations must be thread safe
+public interface RateLimitStore {
+
+    // takes one request from the key's bucket in scope (the route id)
+    // 0 when allowed, otherwise nanos until the key may send again
+    long tryAcquire(String scope, String key, RateLimitPolicy policy);
+}
@@ -0,0 +1,81 @@
+package ru.vicsergeev.GetwayUserService.services.ratelimit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.routing.Route;
+
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// per client limits of services.routes[].rate-limit, checked before the request is proxied
+@Component
+@RequiredArgsConstructor
+public class RateLimiter {
+    private final ServicesProperties services;
+    private final ObjectProvider<RateLimitStore> stores;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, LongAdder> rejected = new ConcurrentHashMap<>();
+    private RateLimitStore store;
+
+    @PostConstruct
+    public void init() {
+        store = stores.getIfAvailable();
+        if (store != null) {
+            return;
+        }
+        InMemoryRateLimitStore inMemory = new InMemoryRateLimitStore(services.getRateLimitMaxKeys());
+        taskScheduler.scheduleWithFixedDelay(inMemory::sweep, Duration.ofMillis(services.getRateLimitSweepInterval()));
+        Gauge.builder("gateway.ratelimit.keys", inMemory, InMemoryRateLimitStore::size)
+                .description("client keys held by the in-memory rate limit store")
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway.ratelimit.overflows", inMemory, InMemoryRateLimitStore::overflows)
+                .description("requests of new clients rejected because the store was full")
+                .register(meterRegistry);
+        store = inMemory;
+    }
+
+    // 0 when the request may proceed, otherwise nanos until the client may send again
+    public long check(Route route, HttpServletRequest request) {
+        RateLimitPolicy policy = route.getRateLimit();
+        if (policy == null) {
+            return 0;
+        }
+        String key = policy.keyHeader() != null ? request.getHeader(policy.keyHeader()) : null;
+        if (key == null) {
+            // no api key / user id: fall back to the address, so anonymous clients are limited too
+            key = request.getRemoteAddr();
+        }
+        long wait = store.tryAcquire(route.getId(), key, policy);
+        if (wait > 0) {
+            rejectedCounter(route.getId()).increment();
+        }
+        return wait;
+    }
+
+    private LongAdder rejectedCounter(String routeId) {
+        LongAdder counter = rejected.get(routeId);
+        return counter != null ? counter : rejected.computeIfAbsent(routeId, this::newRejectedCounter);
+    }
+
+    private LongAdder newRejectedCounter(String routeId) {
+        LongAdder counter = new LongAdder();
+        FunctionCounter.builder("gateway.ratelimit.rejected", counter, LongAdder::sum)
+                .description("requests rejected by the route rate limit")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        return counter;
+    }
+}
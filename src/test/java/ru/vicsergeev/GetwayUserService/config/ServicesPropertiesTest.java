@@ -0,0 +1,51 @@
+package ru.vicsergeev.GetwayUserService.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ServicesPropertiesTest {
+
+    @Test
+    void legacyServicesBindAsBackendsWithTheirOldRoutes() {
+        ServicesProperties services = bind(Map.of(
+                "services.user.instances[0]", "http://localhost:8080",
+                "services.user.response-timeout", "1500",
+                "services.notification.base-url", "http://localhost:8091"));
+
+        assertThat(services.getService("user").getInstancesOrSingle()).containsExactly("http://localhost:8080");
+        assertThat(services.getService("user").getResponseTimeout()).isEqualTo(1500);
+        assertThat(services.getService("notification").getInstancesOrSingle()).containsExactly("http://localhost:8091");
+        assertThat(services.getRoutes())
+                .extracting(ServicesProperties.RouteProps::getPrefix, ServicesProperties.RouteProps::getService)
+                .containsExactlyInAnyOrder(
+                        tuple("/users", "user"),
+                        tuple("/notifications", "notification"));
+    }
+
+    @Test
+    void backendsAndRoutesWinOverLegacyKeys() {
+        ServicesProperties services = bind(Map.of(
+                "services.user.instances[0]", "http://old:8080",
+                "services.backends.user.instances[0]", "http://new:8080",
+                "services.routes[0].prefix", "/api/users",
+                "services.routes[0].service", "user"));
+
+        assertThat(services.getService("user").getInstancesOrSingle()).containsExactly("http://new:8080");
+        assertThat(services.getRoutes()).singleElement()
+                .extracting(ServicesProperties.RouteProps::getPrefix).isEqualTo("/api/users");
+    }
+
+    private static ServicesProperties bind(Map<String, String> properties) {
+        ServicesProperties services = new Binder(new MapConfigurationPropertySource(properties))
+                .bindOrCreate("services", Bindable.of(ServicesProperties.class));
+        services.init();
+        return services;
+    }
+}
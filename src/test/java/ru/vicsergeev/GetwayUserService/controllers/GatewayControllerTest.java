@@ -0,0 +1,89 @@
+package ru.vicsergeev.GetwayUserService.controllers;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class GatewayControllerTest {
+    private static final HttpServer upstream = startUpstream();
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void routes(DynamicPropertyRegistry registry) {
+        registry.add("services.backends.user.instances[0]", () -> "http://localhost:" + upstream.getAddress().getPort());
+        String[] modes = {"buffered", "streaming", "async"};
+        for (int i = 0; i < modes.length; i++) {
+            String mode = modes[i];
+            registry.add("services.routes[" + i + "].id", () -> "users-" + mode);
+            registry.add("services.routes[" + i + "].prefix", () -> "/" + mode);
+            registry.add("services.routes[" + i + "].rewrite-prefix", () -> "/users");
+            registry.add("services.routes[" + i + "].service", () -> "user");
+            registry.add("services.routes[" + i + "].methods", () -> "GET,PATCH");
+            registry.add("services.routes[" + i + "].mode", () -> mode);
+        }
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.stop(0);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"buffered", "streaming", "async"})
+    void patchBodyReachesTheUpstream(String mode) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/" + mode + "/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"name\":\"patched\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+
+        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).isEqualTo("PATCH /users/1 {\"name\":\"patched\"}");
+    }
+
+    // answers with the method, path and body it got
+    private static HttpServer startUpstream() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/", exchange -> {
+                String body;
+                try (InputStream in = exchange.getRequestBody()) {
+                    body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+                byte[] echo = (exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " " + body)
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(200, echo.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(echo);
+                }
+            });
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
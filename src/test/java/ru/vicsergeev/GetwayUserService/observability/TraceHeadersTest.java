@@ -0,0 +1,75 @@
+package ru.vicsergeev.GetwayUserService.observability;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TraceHeadersTest {
+    private static final String INBOUND = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    @Test
+    void keepsAValidRequestId() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/1");
+        request.addHeader(TraceHeaders.REQUEST_ID, "f47ac10b-58cc-4372-a567-0e02b2c3d479");
+
+        assertThat(TraceHeaders.requestId(request)).isEqualTo("f47ac10b-58cc-4372-a567-0e02b2c3d479");
+    }
+
+    @Test
+    void replacesAnOverlongOrOddRequestId() {
+        for (String inbound : new String[]{"a".repeat(129), "id with spaces", "id\r\nX-Injected: 1", "ид", ""}) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/1");
+            request.addHeader(TraceHeaders.REQUEST_ID, inbound);
+
+            String requestId = TraceHeaders.requestId(request);
+
+            assertThat(requestId).matches("[0-9a-f]{32}");
+            // generated once, the response header and the access log see the same id
+            assertThat(TraceHeaders.requestId(request)).isEqualTo(requestId);
+        }
+    }
+
+    @Test
+    void everyAttemptContinuesTheClientsTraceWithItsOwnSpan() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/1");
+        request.addHeader(TraceHeaders.TRACEPARENT, INBOUND);
+        HttpHeaders headers = new HttpHeaders();
+        TraceHeaders.propagate(request, headers);
+
+        String first = headers.getFirst(TraceHeaders.TRACEPARENT);
+        String retry = TraceHeaders.attemptTraceparent(headers);
+
+        assertThat(first).startsWith("00-4bf92f3577b34da6a3ce929d0e0e4736-").endsWith("-01");
+        assertThat(retry).startsWith("00-4bf92f3577b34da6a3ce929d0e0e4736-").endsWith("-01");
+        assertThat(span(first)).isNotEqualTo(span(retry)).isNotEqualTo(span(INBOUND));
+    }
+
+    @Test
+    void requestWithoutATraceKeepsOneGeneratedTraceOverItsAttempts() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/1");
+        request.addHeader(TraceHeaders.TRACEPARENT, "00-not-a-trace");
+        HttpHeaders first = new HttpHeaders();
+        HttpHeaders second = new HttpHeaders();
+
+        // streaming builds the headers again for every attempt
+        TraceHeaders.propagate(request, first);
+        TraceHeaders.propagate(request, second);
+
+        String a = first.getFirst(TraceHeaders.TRACEPARENT);
+        String b = second.getFirst(TraceHeaders.TRACEPARENT);
+        assertThat(a).matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01");
+        assertThat(a.substring(0, 36)).isEqualTo(b.substring(0, 36));
+        assertThat(span(a)).isNotEqualTo(span(b));
+    }
+
+    @Test
+    void noTraceparentWhenARouteRuleRemovedIt() {
+        assertThat(TraceHeaders.attemptTraceparent(new HttpHeaders())).isNull();
+    }
+
+    private static String span(String traceparent) {
+        return traceparent.substring(36, 52);
+    }
+}
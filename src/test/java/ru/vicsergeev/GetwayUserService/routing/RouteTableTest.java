@@ -0,0 +1,133 @@
+package ru.vicsergeev.GetwayUserService.routing;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.services.UpstreamClients;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class RouteTableTest {
+    private ServicesProperties services;
+
+    @BeforeEach
+    void setUp() {
+        services = new ServicesProperties();
+        services.getServices().put("user", new ServicesProperties.ServiceProps());
+        services.getServices().put("notification", new ServicesProperties.ServiceProps());
+    }
+
+    @Test
+    void longestPrefixOnASegmentBoundaryWins() {
+        RouteTable table = table(
+                route("users", "/users", "user"),
+                route("user-admin", "/users/admin", "notification"),
+                route("notifications", "/notifications/", "notification"));
+
+        assertThat(id(table, "/users")).isEqualTo("users");
+        assertThat(id(table, "/users/")).isEqualTo("users");
+        assertThat(id(table, "/users/42")).isEqualTo("users");
+        assertThat(id(table, "/users/admin")).isEqualTo("user-admin");
+        assertThat(id(table, "/users/admin/1")).isEqualTo("user-admin");
+        assertThat(id(table, "/users/administrators")).isEqualTo("users");
+        assertThat(id(table, "/notifications/1")).isEqualTo("notifications");
+        assertThat(table.match("/usersX", 0)).isNull();
+        assertThat(table.match("/user", 0)).isNull();
+        assertThat(table.match("/", 0)).isNull();
+        assertThat(table.match("/пользователи", 0)).isNull();
+    }
+
+    @Test
+    void catchAllRouteTakesWhatNothingElseMatches() {
+        RouteTable table = table(route("users", "/users", "user"), route("default", "/", "notification"));
+
+        assertThat(id(table, "/users/1")).isEqualTo("users");
+        assertThat(id(table, "/usersX")).isEqualTo("default");
+        assertThat(id(table, "/")).isEqualTo("default");
+        assertThat(id(table, "")).isEqualTo("default");
+    }
+
+    @Test
+    void matchesAfterTheContextPath() {
+        RouteTable table = table(route("users", "/users", "user"));
+
+        assertThat(table.match("/gateway/users/1", "/gateway".length()).getId()).isEqualTo("users");
+        assertThat(table.match("/gateway/users/1", 0)).isNull();
+    }
+
+    @Test
+    void rewritesTheMatchedPrefix() {
+        ServicesProperties.RouteProps rewritten = route("users", "/users", "user");
+        rewritten.setRewritePrefix("/api/v1/users/");
+        RouteTable table = table(rewritten, route("notifications", "/notifications", "notification"));
+
+        assertThat(table.match("/users/42", 0).upstreamPath("/users/42", 0)).isEqualTo("/api/v1/users/42");
+        assertThat(table.match("/users", 0).upstreamPath("/users", 0)).isEqualTo("/api/v1/users");
+        assertThat(table.match("/notifications/1", 0).upstreamPath("/notifications/1", 0))
+                .isEqualTo("/notifications/1");
+    }
+
+    @Test
+    void defaultMethodsIncludeHeadAndOptions() {
+        ServicesProperties.RouteProps readOnly = route("notifications", "/notifications", "notification");
+        readOnly.setMethods(List.of("get", "head"));
+        RouteTable table = table(route("users", "/users", "user"), readOnly);
+
+        Route users = table.match("/users/1", 0);
+        for (String method : List.of("GET", "HEAD", "OPTIONS", "POST", "PUT", "DELETE")) {
+            assertThat(users.allows(method)).as(method).isTrue();
+        }
+        assertThat(users.allows("PATCH")).isFalse();
+        Route notifications = table.match("/notifications/1", 0);
+        assertThat(notifications.allows("GET")).isTrue();
+        assertThat(notifications.allows("HEAD")).isTrue();
+        assertThat(notifications.allows("POST")).isFalse();
+    }
+
+    @Test
+    void priorityComesFromTheRoute() {
+        ServicesProperties.RouteProps admin = route("admin", "/admin", "user");
+        admin.setPriority(true);
+        RouteTable table = table(route("users", "/users", "user"), admin);
+
+        assertThat(table.match("/admin/jobs", 0).isPriority()).isTrue();
+        assertThat(table.match("/users/1", 0).isPriority()).isFalse();
+    }
+
+    @Test
+    void rejectsBrokenRouteTables() {
+        assertThatThrownBy(() -> table(route("users", "/users", "user"), route("users", "/people", "user")))
+                .hasMessageContaining("duplicate route id");
+        assertThatThrownBy(() -> table(route("a", "/users", "user"), route("b", "/users/", "user")))
+                .hasMessageContaining("same prefix");
+        assertThatThrownBy(() -> table(route("users", "/users", "billing")))
+                .hasMessageContaining("unknown service");
+        assertThatThrownBy(() -> table(route("users", "users", "user")))
+                .hasMessageContaining("must start with /");
+    }
+
+    private RouteTable table(ServicesProperties.RouteProps... routes) {
+        services.getRoutes().clear();
+        services.getRoutes().addAll(List.of(routes));
+        RouteTable table = new RouteTable(services, mock(UpstreamClients.class));
+        table.init();
+        return table;
+    }
+
+    private static ServicesProperties.RouteProps route(String id, String prefix, String service) {
+        ServicesProperties.RouteProps route = new ServicesProperties.RouteProps();
+        route.setId(id);
+        route.setPrefix(prefix);
+        route.setService(service);
+        return route;
+    }
+
+    private static String id(RouteTable table, String path) {
+        Route route = table.match(path, 0);
+        return route != null ? route.getId() : null;
+    }
+}
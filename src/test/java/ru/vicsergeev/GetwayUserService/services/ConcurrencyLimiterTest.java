@@ -0,0 +1,187 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimiterTest {
+    private static final long MS = 1_000_000L;
+
+    private ServicesProperties.LimitProps props;
+    private SimpleMeterRegistry meterRegistry;
+    private ConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        ServicesProperties services = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        services.getServices().put("user", user);
+        props = user.getLimit();
+        props.setEnabled(true);
+        props.setInitialLimit(10);
+        props.setPriorityReserve(0.2);
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new ConcurrencyLimiter(services, meterRegistry);
+    }
+
+    @Test
+    void disabledLimitAdmitsEverything() {
+        props.setEnabled(false);
+
+        for (int i = 0; i < 100; i++) {
+            ConcurrencyLimiter.Permit permit = limiter.tryAcquire("user", false);
+            assertThat(permit).isNotNull();
+            permit.onUpstream(MS);
+        }
+    }
+
+    @Test
+    void keepsTheReserveForPriorityRequests() {
+        for (int i = 0; i < 8; i++) {
+            assertThat(limiter.tryAcquire("user", false)).isNotNull();
+        }
+        assertThat(limiter.tryAcquire("user", false)).isNull();
+        assertThat(limiter.tryAcquire("user", true)).isNotNull();
+        assertThat(limiter.tryAcquire("user", true)).isNotNull();
+        assertThat(limiter.tryAcquire("user", true)).isNull();
+
+        assertThat(rejected("normal")).isEqualTo(1);
+        assertThat(rejected("high")).isEqualTo(1);
+        assertThat(inFlight()).isEqualTo(10);
+    }
+
+    @Test
+    void requestsThatNeverWentUpstreamLeaveTheLimitAlone() {
+        List<ConcurrencyLimiter.Permit> permits = acquire(8);
+
+        // cache hits and coalesced followers: fast, but not upstream latency
+        permits.get(0).onSuccess();
+        permits.get(1).onSuccess();
+        // follower whose shared call failed
+        permits.get(2).onDropped();
+
+        assertThat(limit()).isEqualTo(10);
+        assertThat(inFlight()).isEqualTo(5);
+    }
+
+    @Test
+    void dropsShrinkTheLimit() {
+        List<ConcurrencyLimiter.Permit> permits = acquire(8);
+
+        permits.get(0).onUpstream(MS);
+        permits.get(0).onDropped();
+
+        assertThat(limit()).isEqualTo(9);
+        assertThat(inFlight()).isEqualTo(7);
+    }
+
+    @Test
+    void growsWhileLatencyIsFlatAndShrinksWhenItClimbs() {
+        props.setSmoothing(1.0);
+        List<ConcurrencyLimiter.Permit> permits = acquire(8);
+
+        permits.get(0).onUpstream(20 * MS);
+        permits.get(0).onSuccess();
+        double grown = limit();
+        assertThat(grown).isGreaterThan(10);
+
+        // five times the long term latency, the gradient bottoms out at 0.5
+        permits.get(1).onUpstream(100 * MS);
+        permits.get(1).onSuccess();
+        assertThat(limit()).isLessThan(grown);
+    }
+
+    @Test
+    void sampleIsTheLastAttemptNotTheTimeSinceAcquire() throws InterruptedException {
+        props.setSmoothing(1.0);
+        List<ConcurrencyLimiter.Permit> permits = acquire(8);
+        permits.get(0).onUpstream(20 * MS);
+        permits.get(0).onSuccess();
+        double grown = limit();
+
+        // waited on a coalesced call and a retry backoff, then a failed attempt and a fast one
+        Thread.sleep(100);
+        permits.get(1).onUpstream(200 * MS);
+        permits.get(1).onUpstream(20 * MS);
+        permits.get(1).onSuccess();
+
+        assertThat(limit()).isGreaterThan(grown);
+    }
+
+    @Test
+    void concurrentDropsAreAllApplied() throws InterruptedException {
+        props.setInitialLimit(1000);
+        props.setMaxLimit(1000);
+        props.setMinLimit(1);
+        int threads = 32;
+        List<ConcurrencyLimiter.Permit> permits = acquire(threads);
+        permits.forEach(permit -> permit.onUpstream(MS));
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                permit.onDropped();
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // none skipped because another thread was updating at the time
+        double expected = 1000;
+        for (int i = 0; i < threads; i++) {
+            expected *= 0.9;
+        }
+        assertThat(limit()).isEqualTo(expected);
+        assertThat(inFlight()).isZero();
+    }
+
+    @Test
+    void neverLeavesMinAndMaxLimit() {
+        props.setMinLimit(8);
+        for (int i = 0; i < 5; i++) {
+            ConcurrencyLimiter.Permit permit = limiter.tryAcquire("user", true);
+            permit.onUpstream(MS);
+            permit.onDropped();
+        }
+
+        assertThat(limit()).isEqualTo(8);
+    }
+
+    private List<ConcurrencyLimiter.Permit> acquire(int count) {
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            permits.add(limiter.tryAcquire("user", false));
+        }
+        assertThat(permits).doesNotContainNull();
+        return permits;
+    }
+
+    private double limit() {
+        return meterRegistry.get("gateway.limit").gauge().value();
+    }
+
+    private double inFlight() {
+        return meterRegistry.get("gateway.limit.inflight").gauge().value();
+    }
+
+    private double rejected(String priority) {
+        return meterRegistry.get("gateway.limit.rejected").tag("priority", priority).functionCounter().count();
+    }
+}
@@ -0,0 +1,93 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgingPolicyTest {
+    private ServicesProperties.HedgeProps props;
+    private SimpleMeterRegistry meterRegistry;
+    private HedgingPolicy policy;
+
+    @BeforeEach
+    void setUp() {
+        ServicesProperties services = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        services.getServices().put("user", user);
+        props = user.getHedge();
+        props.setEnabled(true);
+        meterRegistry = new SimpleMeterRegistry();
+        policy = new HedgingPolicy(services, meterRegistry);
+    }
+
+    @Test
+    void usesTheFixedDelayUntilEnoughSamples() {
+        for (int i = 0; i < 127; i++) {
+            policy.record("user", millis(500));
+        }
+
+        assertThat(policy.delayMillis("user")).isEqualTo(100);
+    }
+
+    @Test
+    void followsTheConfiguredPercentile() {
+        // 1..128 ms, p95 is the 122nd sample
+        for (int i = 1; i <= 128; i++) {
+            policy.record("user", millis(i));
+        }
+
+        assertThat(policy.delayMillis("user")).isEqualTo(122);
+        assertThat(meterRegistry.get("gateway.hedge.delay").gauge().value()).isEqualTo(122);
+    }
+
+    @Test
+    void neverHedgesSoonerThanTheMinDelay() {
+        for (int i = 0; i < 128; i++) {
+            policy.record("user", millis(1));
+        }
+
+        assertThat(policy.delayMillis("user")).isEqualTo(10);
+    }
+
+    @Test
+    void recentSamplesReplaceOldOnes() {
+        for (int i = 0; i < 1024; i++) {
+            policy.record("user", millis(500));
+        }
+        assertThat(policy.delayMillis("user")).isEqualTo(500);
+
+        for (int i = 0; i < 1024; i++) {
+            policy.record("user", millis(20));
+        }
+        assertThat(policy.delayMillis("user")).isEqualTo(20);
+    }
+
+    @Test
+    void zeroPercentileKeepsTheFixedDelay() {
+        props.setPercentile(0);
+        props.setDelay(250);
+
+        for (int i = 0; i < 256; i++) {
+            policy.record("user", millis(1));
+        }
+
+        assertThat(policy.delayMillis("user")).isEqualTo(250);
+    }
+
+    @Test
+    void countsHedgeWins() {
+        policy.onHedgeWin("user");
+        policy.onHedgeWin("user");
+
+        assertThat(meterRegistry.get("gateway.hedge.wins").functionCounter().count()).isEqualTo(2);
+    }
+
+    private static long millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+}
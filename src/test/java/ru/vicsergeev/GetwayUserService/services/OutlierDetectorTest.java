@@ -0,0 +1,193 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.TaskScheduler;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.observability.UpstreamMetrics;
+import ru.vicsergeev.GetwayUserService.services.discovery.DiscoverySource;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutlierDetectorTest {
+    private static final long MS = 1_000_000L;
+
+    private ServicesProperties services;
+    private ServicesProperties.OutlierProps outlier;
+    private TaskScheduler taskScheduler;
+    private ServiceDiscoveryManager serviceDiscovery;
+    private OutlierDetector detector;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        services = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        user.setInstances(List.of("http://a:8081", "http://b:8081", "http://c:8081", "http://d:8081"));
+        services.getServices().put("user", user);
+        outlier = user.getOutlier();
+        outlier.setConsecutive5xx(3);
+        outlier.setConsecutiveGatewayErrors(2);
+        outlier.setConsecutiveSlow(2);
+        outlier.setBaseEjectionTime(1000);
+        outlier.setMaxEjectionTime(4000);
+
+        ObjectProvider<DiscoverySource> sources = mock(ObjectProvider.class);
+        when(sources.orderedStream()).thenReturn(Stream.empty());
+        taskScheduler = mock(TaskScheduler.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        serviceDiscovery = new ServiceDiscoveryManager(services, sources, taskScheduler,
+                new UpstreamMetrics(meterRegistry));
+        serviceDiscovery.init();
+        detector = new OutlierDetector(services, serviceDiscovery, taskScheduler, meterRegistry);
+    }
+
+    @Test
+    void ejectsAfterConsecutive5xx() {
+        ServiceInstance a = instance("http://a:8081");
+
+        detector.onResponse(a, 503, MS);
+        detector.onResponse(a, 502, MS);
+        assertThat(a.isEjected()).isFalse();
+        detector.onResponse(a, 500, MS);
+
+        assertThat(a.isEjected()).isTrue();
+        assertThat(serviceDiscovery.getAvailableInstances("user")).doesNotContain("http://a:8081");
+    }
+
+    @Test
+    void ejectionStartsTheHealthCheckStreaksOver() {
+        ServiceInstance a = instance("http://a:8081");
+        ServiceInstance b = instance("http://b:8081");
+        // probes that passed before the ejection must not count towards bringing it back
+        a.consecutiveProbeSuccesses().set(10);
+        b.consecutiveProbeFailures().set(1);
+
+        for (int i = 0; i < 3; i++) {
+            detector.onResponse(a, 500, MS);
+        }
+        detector.onGatewayError(b);
+        detector.onGatewayError(b);
+
+        assertThat(a.isEjected()).isTrue();
+        assertThat(a.consecutiveProbeSuccesses()).hasValue(0);
+        assertThat(b.isEjected()).isTrue();
+        assertThat(b.consecutiveProbeFailures()).hasValue(0);
+    }
+
+    @Test
+    void successResetsThe5xxStreak() {
+        ServiceInstance a = instance("http://a:8081");
+
+        detector.onResponse(a, 500, MS);
+        detector.onResponse(a, 500, MS);
+        detector.onResponse(a, 200, MS);
+        detector.onResponse(a, 500, MS);
+        detector.onResponse(a, 500, MS);
+
+        assertThat(a.isEjected()).isFalse();
+    }
+
+    @Test
+    void ejectsAfterConsecutiveGatewayErrorsAndReturnsWhenTheTimerFires() {
+        ServiceInstance b = instance("http://b:8081");
+
+        detector.onGatewayError(b);
+        assertThat(b.isEjected()).isFalse();
+        detector.onGatewayError(b);
+        assertThat(b.isEjected()).isTrue();
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler).schedule(task.capture(), any(Instant.class));
+        task.getValue().run();
+
+        assertThat(b.isEjected()).isFalse();
+        assertThat(serviceDiscovery.getAvailableInstances("user")).contains("http://b:8081");
+        // back from ejection it ramps up instead of taking full traffic at once
+        assertThat(b.trafficWeight(1_000_000_000L)).isLessThan(1.0);
+    }
+
+    @Test
+    void repeatedEjectionsDoubleTheEjectionTimeUpToTheMax() {
+        ServiceInstance a = instance("http://a:8081");
+        long[] durations = new long[4];
+        for (int i = 0; i < durations.length; i++) {
+            long before = System.currentTimeMillis();
+            detector.onGatewayError(a);
+            detector.onGatewayError(a);
+            assertThat(a.isEjected()).isTrue();
+            durations[i] = a.getLastEjectionEndMillis() - before;
+            serviceDiscovery.returnFromEjection(a);
+        }
+
+        assertThat(durations[0]).isBetween(1000L, 1100L);
+        assertThat(durations[1]).isBetween(2000L, 2100L);
+        assertThat(durations[2]).isBetween(4000L, 4100L);
+        assertThat(durations[3]).isBetween(4000L, 4100L);
+    }
+
+    @Test
+    void neverEjectsMoreThanMaxEjectionPercent() {
+        outlier.setConsecutive5xx(1);
+
+        for (String url : List.of("http://a:8081", "http://b:8081", "http://c:8081", "http://d:8081")) {
+            detector.onResponse(instance(url), 500, MS);
+        }
+
+        assertThat(serviceDiscovery.getAvailableInstanceCount("user")).isEqualTo(2);
+    }
+
+    @Test
+    void ejectsAnInstanceFarSlowerThanItsPeers() {
+        for (String url : List.of("http://b:8081", "http://c:8081", "http://d:8081")) {
+            ServiceInstance peer = instance(url);
+            peer.onRequestStart();
+            peer.onRequestEnd(20 * MS);
+        }
+        ServiceInstance a = instance("http://a:8081");
+
+        // slow, but under the latency floor: not an outlier
+        detector.onResponse(a, 200, 90 * MS);
+        detector.onResponse(a, 200, 90 * MS);
+        assertThat(a.isEjected()).isFalse();
+
+        detector.onResponse(a, 200, 500 * MS);
+        detector.onResponse(a, 200, 500 * MS);
+        assertThat(a.isEjected()).isTrue();
+    }
+
+    @Test
+    void disabledDetectionMarksTheInstanceFailedOnGatewayErrors() {
+        outlier.setEnabled(false);
+        ServiceInstance c = instance("http://c:8081");
+
+        detector.onResponse(c, 500, MS);
+        detector.onResponse(c, 500, MS);
+        detector.onResponse(c, 500, MS);
+        assertThat(c.isAvailable()).isTrue();
+
+        detector.onGatewayError(c);
+        assertThat(c.isEjected()).isFalse();
+        assertThat(c.isHealthy()).isFalse();
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    private ServiceInstance instance(String url) {
+        return serviceDiscovery.getInstances("user").stream()
+                .filter(instance -> instance.getUrl().equals(url))
+                .findFirst()
+                .orElseThrow();
+    }
+}
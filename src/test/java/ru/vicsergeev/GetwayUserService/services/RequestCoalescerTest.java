@@ -0,0 +1,204 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestCoalescerTest {
+    private ServicesProperties.CoalescingProps props;
+    private SimpleMeterRegistry meterRegistry;
+    private RequestCoalescer coalescer;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        ServicesProperties services = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        props = user.getCoalescing();
+        props.setEnabled(true);
+        services.getServices().put("user", user);
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new RequestCoalescer(services, meterRegistry);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void keyCoversConfiguredAndConditionalHeaders() {
+        HttpHeaders alice = new HttpHeaders();
+        alice.setBearerAuth("alice");
+        HttpHeaders bob = new HttpHeaders();
+        bob.setBearerAuth("bob");
+        HttpHeaders aliceConditional = new HttpHeaders();
+        aliceConditional.setBearerAuth("alice");
+        aliceConditional.setIfNoneMatch("\"v1\"");
+        HttpHeaders aliceTraced = new HttpHeaders();
+        aliceTraced.setBearerAuth("alice");
+        aliceTraced.set("X-Request-Id", "42");
+        HttpHeaders aliceGzip = new HttpHeaders();
+        aliceGzip.setBearerAuth("alice");
+        aliceGzip.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+        String key = coalescer.key("user", "/users/1", alice);
+
+        assertThat(coalescer.key("user", "/users/1", bob)).isNotEqualTo(key);
+        assertThat(coalescer.key("user", "/users/1", aliceConditional)).isNotEqualTo(key);
+        assertThat(coalescer.key("user", "/users/1?full=true", alice)).isNotEqualTo(key);
+        assertThat(coalescer.key("user", "/users/1", aliceTraced)).isEqualTo(key);
+        // the upstream encodes for it, so it is part of the key whatever key-headers says
+        assertThat(coalescer.key("user", "/users/1", aliceGzip)).isNotEqualTo(key);
+    }
+
+    @Test
+    void concurrentIdenticalRequestsShareOneCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<ResponseEntity<String>> upstream = () -> {
+            calls.incrementAndGet();
+            await(release);
+            return ResponseEntity.ok("alice");
+        };
+        String key = coalescer.key("user", "/users/1", new HttpHeaders());
+
+        List<Future<ResponseEntity<String>>> responses = new ArrayList<>();
+        responses.add(executor.submit(() -> coalescer.execute("user", key, upstream)));
+        waitUntil(() -> calls.get() == 1);
+        for (int i = 0; i < 4; i++) {
+            responses.add(executor.submit(() -> coalescer.execute("user", key, upstream)));
+        }
+        waitUntil(() -> joined() == 4);
+        release.countDown();
+
+        for (Future<ResponseEntity<String>> response : responses) {
+            assertThat(response.get(5, TimeUnit.SECONDS).getBody()).isEqualTo("alice");
+        }
+        assertThat(calls).hasValue(1);
+
+        // done calls are not reused, the next request goes upstream again
+        coalescer.execute("user", key, upstream);
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void nullKeyAlwaysCallsUpstream() {
+        AtomicInteger calls = new AtomicInteger();
+
+        coalescer.execute("user", null, () -> ResponseEntity.ok(String.valueOf(calls.incrementAndGet())));
+        coalescer.execute("user", null, () -> ResponseEntity.ok(String.valueOf(calls.incrementAndGet())));
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void followersGetTheLeadersFailure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String key = coalescer.key("user", "/users/1", new HttpHeaders());
+
+        Future<ResponseEntity<String>> leader = executor.submit(() -> coalescer.execute("user", key, () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("upstream down");
+        }));
+        await(started);
+        Future<ResponseEntity<String>> follower = executor.submit(
+                () -> coalescer.execute("user", key, () -> ResponseEntity.ok("not called")));
+        waitUntil(() -> joined() == 1);
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("upstream down");
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("upstream down");
+    }
+
+    @Test
+    void followerGivesUpAfterMaxWait() throws Exception {
+        props.setMaxWait(50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String key = coalescer.key("user", "/users/1", new HttpHeaders());
+        executor.submit(() -> coalescer.execute("user", key, () -> {
+            started.countDown();
+            await(release);
+            return ResponseEntity.ok("late");
+        }));
+        await(started);
+
+        try {
+            assertThatThrownBy(() -> coalescer.execute("user", key, () -> ResponseEntity.ok("not called")))
+                    .hasCauseInstanceOf(TimeoutException.class);
+            assertThat(meterRegistry.get("gateway.coalescing.timeouts").functionCounter().count()).isEqualTo(1);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void asyncFollowersShareTheCallAndTimeOutIndependently() throws Exception {
+        props.setMaxWait(50);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<ResponseEntity<String>> upstream = new CompletableFuture<>();
+        Supplier<CompletableFuture<ResponseEntity<String>>> call = () -> {
+            calls.incrementAndGet();
+            return upstream;
+        };
+        String key = coalescer.key("user", "/users/1", new HttpHeaders());
+
+        CompletableFuture<ResponseEntity<String>> leader = coalescer.executeAsync("user", key, call);
+        CompletableFuture<ResponseEntity<String>> follower = coalescer.executeAsync("user", key, call);
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(TimeoutException.class);
+
+        // the follower timing out leaves the shared call alone
+        assertThat(leader).isNotDone();
+        upstream.complete(ResponseEntity.ok("alice"));
+        assertThat(leader.get(5, TimeUnit.SECONDS).getBody()).isEqualTo("alice");
+        assertThat(calls).hasValue(1);
+    }
+
+    private double joined() {
+        var counter = meterRegistry.find("gateway.coalescing.joined").functionCounter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitUntil(Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.get()) {
+            assertThat(System.nanoTime()).as("timed out waiting").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheTest {
+    private ServicesProperties services;
+    private SimpleMeterRegistry meterRegistry;
+    private ResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        services = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        user.getCache().setEnabled(true);
+        services.getServices().put("user", user);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new ResponseCache(services, meterRegistry);
+        cache.init();
+    }
+
+    @Test
+    void servesAFreshEntryWithoutTheUpstream() {
+        store("/users/1", "", new HttpHeaders(), ok("alice", "max-age=60", "\"v1\""));
+
+        ResponseCache.Lookup lookup = cache.lookup("user", "/users/1", "", new HttpHeaders());
+
+        assertThat(lookup.isFresh()).isTrue();
+        ResponseEntity<String> response = cache.cachedResponse(lookup);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo("alice");
+        assertThat(response.getHeaders().getFirst(HttpHeaders.AGE)).isEqualTo("0");
+    }
+
+    @Test
+    void answersTheClientsMatchingValidatorWith304() {
+        store("/users/1", "", new HttpHeaders(), ok("alice", "max-age=60", "\"v1\""));
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.setIfNoneMatch("\"v0\", W/\"v1\"");
+
+        ResponseEntity<String> response = cache.cachedResponse(cache.lookup("user", "/users/1", "", conditional));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getBody()).isNull();
+    }
+
+    @Test
+    void requestNoCacheAndMaxAgeZeroSkipTheFreshEntry() {
+        store("/users/1", "", new HttpHeaders(), ok("alice", "max-age=60", null));
+        HttpHeaders noCache = new HttpHeaders();
+        noCache.setCacheControl("no-cache");
+        HttpHeaders maxAgeZero = new HttpHeaders();
+        maxAgeZero.setCacheControl("max-age=0");
+        HttpHeaders noStore = new HttpHeaders();
+        noStore.setCacheControl("no-store");
+
+        assertThat(cache.lookup("user", "/users/1", "", noCache).isFresh()).isFalse();
+        assertThat(cache.lookup("user", "/users/1", "", maxAgeZero).isFresh()).isFalse();
+        assertThat(cache.lookup("user", "/users/1", "", noStore)).isNull();
+    }
+
+    @Test
+    void keysByQueryAndVary() {
+        HttpHeaders json = new HttpHeaders();
+        json.set(HttpHeaders.ACCEPT, "application/json");
+        ResponseEntity<String> varying = ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(1)))
+                .varyBy(HttpHeaders.ACCEPT)
+                .body("{\"name\":\"alice\"}");
+        store("/users/1", "?page=1", json, varying);
+
+        HttpHeaders xml = new HttpHeaders();
+        xml.set(HttpHeaders.ACCEPT, "application/xml");
+        assertThat(cache.lookup("user", "/users/1", "?page=1", json).isFresh()).isTrue();
+        assertThat(cache.lookup("user", "/users/1", "?page=1", xml).isFresh()).isFalse();
+        assertThat(cache.lookup("user", "/users/1", "?page=2", json).isFresh()).isFalse();
+    }
+
+    @Test
+    void encodedResponsesVaryByAcceptEncodingEvenWithoutVary() {
+        HttpHeaders gzip = new HttpHeaders();
+        gzip.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        ResponseEntity<String> encoded = ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(1)))
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body("\u001f\u008b");
+        store("/users/1", "", gzip, encoded);
+
+        assertThat(cache.lookup("user", "/users/1", "", gzip).isFresh()).isTrue();
+        assertThat(cache.lookup("user", "/users/1", "", new HttpHeaders()).isFresh()).isFalse();
+    }
+
+    @Test
+    void doesNotStorePrivateNoStoreOrCookieResponses() {
+        store("/a", "", new HttpHeaders(), ok("a", "private, max-age=60", null));
+        store("/b", "", new HttpHeaders(), ok("b", "no-store", null));
+        store("/c", "", new HttpHeaders(), ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "max-age=60")
+                .header(HttpHeaders.SET_COOKIE, "session=1")
+                .body("c"));
+        // stale at once and nothing to revalidate by
+        store("/d", "", new HttpHeaders(), ok("d", null, null));
+
+        for (String path : new String[] {"/a", "/b", "/c", "/d"}) {
+            assertThat(cache.lookup("user", path, "", new HttpHeaders()).isFresh()).as(path).isFalse();
+        }
+        assertThat(meterRegistry.get("gateway.cache.size").gauge().value()).isZero();
+    }
+
+    @Test
+    void revalidatesAStaleEntryWithItsOwnETag() {
+        store("/users/1", "", new HttpHeaders(), ok("alice", "max-age=0", "\"v1\""));
+
+        ResponseCache.Lookup stale = cache.lookup("user", "/users/1", "", new HttpHeaders());
+        assertThat(stale.isFresh()).isFalse();
+        HttpHeaders upstream = new HttpHeaders();
+        cache.addValidators(stale, upstream);
+        assertThat(upstream.getIfNoneMatch()).containsExactly("\"v1\"");
+
+        ResponseEntity<String> notModified = ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .header(HttpHeaders.CACHE_CONTROL, "max-age=60")
+                .build();
+        ResponseEntity<String> response = cache.complete(stale, notModified);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo("alice");
+        assertThat(cache.lookup("user", "/users/1", "", new HttpHeaders()).isFresh()).isTrue();
+    }
+
+    @Test
+    void replacesAStaleEntryTheUpstreamChanged() {
+        store("/users/1", "", new HttpHeaders(), ok("alice", "max-age=0", "\"v1\""));
+
+        ResponseCache.Lookup stale = cache.lookup("user", "/users/1", "", new HttpHeaders());
+        cache.addValidators(stale, new HttpHeaders());
+        cache.complete(stale, ok("alice smith", "max-age=60", "\"v2\""));
+
+        ResponseCache.Lookup lookup = cache.lookup("user", "/users/1", "", new HttpHeaders());
+        assertThat(lookup.isFresh()).isTrue();
+        assertThat(cache.cachedResponse(lookup).getBody()).isEqualTo("alice smith");
+        assertThat(meterRegistry.get("gateway.cache.size").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void a304ForTheClientsOwnValidatorDoesNotRefreshTheEntry() {
+        store("/users/1", "", new HttpHeaders(), ok("alice", "max-age=0", "\"v1\""));
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.setIfNoneMatch("\"v7\"");
+
+        ResponseCache.Lookup stale = cache.lookup("user", "/users/1", "", conditional);
+        cache.addValidators(stale, conditional);
+        assertThat(conditional.getIfNoneMatch()).containsExactly("\"v7\"");
+        ResponseEntity<String> response = cache.complete(stale, ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .header(HttpHeaders.CACHE_CONTROL, "max-age=60")
+                .build());
+
+        // passed through to the client, the stored v1 may be out of date
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(cache.lookup("user", "/users/1", "", new HttpHeaders()).isFresh()).isFalse();
+    }
+
+    @Test
+    void a304NamingTheStoredETagRefreshesItForAnyValidator() {
+        store("/users/1", "", new HttpHeaders(), ok("alice", "max-age=0", "\"v1\""));
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.setIfNoneMatch("\"v0\", \"v1\"");
+
+        ResponseCache.Lookup stale = cache.lookup("user", "/users/1", "", conditional);
+        ResponseEntity<String> response = cache.complete(stale, ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag("\"v1\"")
+                .header(HttpHeaders.CACHE_CONTROL, "max-age=60")
+                .build());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(cache.lookup("user", "/users/1", "", new HttpHeaders()).isFresh()).isTrue();
+    }
+
+    @Test
+    void unsafeMethodsInvalidateThePathUnlessTheyFailed() {
+        store("/users/1", "", new HttpHeaders(), ok("alice", "max-age=60", null));
+        store("/users/1", "?full=true", new HttpHeaders(), ok("alice", "max-age=60", null));
+
+        cache.invalidate("user", "/users/1", 500);
+        assertThat(cache.lookup("user", "/users/1", "", new HttpHeaders()).isFresh()).isTrue();
+
+        cache.invalidate("user", "/users/1", 204);
+        assertThat(cache.lookup("user", "/users/1", "", new HttpHeaders()).isFresh()).isFalse();
+        assertThat(cache.lookup("user", "/users/1", "?full=true", new HttpHeaders()).isFresh()).isFalse();
+        assertThat(meterRegistry.get("gateway.cache.invalidations").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void oneOffPathsDoNotEvictAPopularOne() {
+        // a couple of entries per segment
+        services.setResponseCacheMaxBytes(16 * 1024);
+        String body = "x".repeat(300);
+        store("/users/hot", "", new HttpHeaders(), ok(body, "max-age=60", null));
+        for (int i = 0; i < 20; i++) {
+            cache.lookup("user", "/users/hot", "", new HttpHeaders());
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            store("/users/" + i, "", new HttpHeaders(), ok(body, "max-age=60", null));
+        }
+
+        assertThat(cache.lookup("user", "/users/hot", "", new HttpHeaders()).isFresh()).isTrue();
+        assertThat(meterRegistry.get("gateway.cache.rejections").functionCounter().count()).isPositive();
+        assertThat(meterRegistry.get("gateway.cache.bytes").gauge().value()).isLessThanOrEqualTo(16 * 1024);
+    }
+
+    private void store(String path, String query, HttpHeaders requestHeaders, ResponseEntity<String> response) {
+        cache.complete(cache.lookup("user", path, query, requestHeaders), response);
+    }
+
+    private static ResponseEntity<String> ok(String body, String cacheControl, String etag) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (cacheControl != null) {
+            builder.header(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+        if (etag != null) {
+            builder.eTag(etag);
+        }
+        return builder.body(body);
+    }
+}
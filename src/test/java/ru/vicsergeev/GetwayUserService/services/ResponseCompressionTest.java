@@ -0,0 +1,88 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCompressionTest {
+    private static final String BODY = "{\"name\":\"Алиса\"}".repeat(100);
+
+    private ResponseCompression compression;
+
+    @BeforeEach
+    void setUp() {
+        ServicesProperties services = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        user.getCompression().setEnabled(true);
+        user.getCompression().setMinSize(64);
+        services.getServices().put("user", user);
+        compression = new ResponseCompression(services);
+    }
+
+    @Test
+    void passesAnUpstreamEncodedBodyThroughByteForByte() throws IOException {
+        byte[] gzipped = gzip(BODY.getBytes(StandardCharsets.UTF_8));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        ResponseEntity<String> upstream = new ResponseEntity<>(UpstreamResponses.body(gzipped, headers), headers,
+                HttpStatus.OK);
+
+        ResponseEntity<?> response = compression.compress("user", "gzip", upstream);
+
+        assertThat(response.getBody()).isEqualTo(gzipped);
+        assertThat(response.getHeaders().get(HttpHeaders.CONTENT_ENCODING)).containsExactly("gzip");
+    }
+
+    @Test
+    void gzipsTheOriginalBytesOfAnUncompressedBody() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        byte[] bytes = BODY.getBytes(StandardCharsets.UTF_8);
+        ResponseEntity<String> upstream = ResponseEntity.ok().headers(headers).body(UpstreamResponses.body(bytes, headers));
+
+        ResponseEntity<?> response = compression.compress("user", "gzip, deflate", upstream);
+
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(response.getHeaders().getVary()).contains(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(gunzip((byte[]) response.getBody())).isEqualTo(bytes);
+    }
+
+    @Test
+    void leavesTheResponseAloneForClientsWithoutGzip() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        ResponseEntity<String> upstream = ResponseEntity.ok().headers(headers).body(BODY);
+
+        assertThat(compression.compress("user", null, upstream)).isSameAs(upstream);
+        assertThat(compression.compress("user", "gzip;q=0, br", upstream)).isSameAs(upstream);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryBudgetTest {
+    private ServicesProperties.RetryProps props;
+    private SimpleMeterRegistry meterRegistry;
+    private RetryBudget budget;
+
+    @BeforeEach
+    void setUp() {
+        ServicesProperties services = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        services.getServices().put("user", user);
+        props = user.getRetry();
+        meterRegistry = new SimpleMeterRegistry();
+        budget = new RetryBudget(services, meterRegistry);
+    }
+
+    @Test
+    void startsFullAndDrainsInAnOutage() {
+        // ten seconds worth of min-retries-per-second, the time based refill adds one a second
+        props.setMinRetriesPerSecond(1);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(budget.tryAcquire("user", "retry")).isTrue();
+        }
+        assertThat(budget.tryAcquire("user", "retry")).isFalse();
+        assertThat(budget.tryAcquire("user", "hedge")).isFalse();
+
+        assertThat(counter("gateway.retry.attempts", "retry")).isEqualTo(10);
+        assertThat(meterRegistry.get("gateway.retry.budget.exhausted").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void requestsPayForRetriesAtTheBudgetRatio() {
+        // no time based refill, the bucket holds a single token
+        props.setMinRetriesPerSecond(0);
+        props.setBudgetRatio(0.2);
+        assertThat(budget.tryAcquire("user", "retry")).isTrue();
+
+        for (int i = 0; i < 4; i++) {
+            budget.onRequest("user");
+        }
+        assertThat(budget.tryAcquire("user", "hedge")).isFalse();
+        budget.onRequest("user");
+        assertThat(budget.tryAcquire("user", "hedge")).isTrue();
+        assertThat(counter("gateway.retry.attempts", "hedge")).isEqualTo(1);
+    }
+
+    @Test
+    void depositsStopAtCapacity() {
+        props.setMinRetriesPerSecond(0);
+        props.setBudgetRatio(1);
+
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest("user");
+        }
+
+        assertThat(budget.tryAcquire("user", "retry")).isTrue();
+        assertThat(budget.tryAcquire("user", "retry")).isFalse();
+    }
+
+    @Test
+    void backoffIsExponentialWithFullJitterUpToTheMax() {
+        props.setBackoff(100);
+        props.setMaxBackoff(1000);
+
+        long maxFirst = 0;
+        for (int i = 0; i < 1000; i++) {
+            long first = budget.backoff("user", 1);
+            assertThat(first).isBetween(0L, 100L);
+            maxFirst = Math.max(maxFirst, first);
+            assertThat(budget.backoff("user", 3)).isBetween(0L, 400L);
+            assertThat(budget.backoff("user", 30)).isBetween(0L, 1000L);
+        }
+        // jittered over the whole range, not pinned to the ceiling or to zero
+        assertThat(maxFirst).isGreaterThan(50);
+    }
+
+    @Test
+    void zeroBackoffRetriesAtOnce() {
+        props.setBackoff(0);
+
+        assertThat(budget.backoff("user", 5)).isZero();
+    }
+
+    private double counter(String name, String kind) {
+        return meterRegistry.get(name).tag("kind", kind).functionCounter().count();
+    }
+}
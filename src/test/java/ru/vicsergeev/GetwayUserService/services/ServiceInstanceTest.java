@@ -0,0 +1,46 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ServiceInstanceTest {
+    private static final long MILLI = 1_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+
+    private final ServiceInstance instance = new ServiceInstance("user", "http://a:8081");
+
+    @Test
+    void slowerSampleIsTakenAsIsFasterOnesAreAveragedIn() {
+        long now = 100 * SECOND;
+        instance.recordLatency(10 * MILLI, now);
+        instance.recordLatency(50 * MILLI, now);
+        assertThat(instance.getLatencyEwmaNanos(now)).isEqualTo(50.0 * MILLI);
+
+        instance.recordLatency(10 * MILLI, now);
+        assertThat(instance.getLatencyEwmaNanos(now)).isEqualTo(38.0 * MILLI, within(1.0));
+    }
+
+    @Test
+    void averageDecaysWithTheTimeSinceTheLastSample() {
+        long now = 100 * SECOND;
+        instance.recordLatency(500 * MILLI, now);
+
+        // one decay time later it is down to 1/e
+        assertThat(instance.getLatencyEwmaNanos(now + 10 * SECOND)).isEqualTo(500 * MILLI / Math.E, within(1.0));
+        assertThat(instance.getLatencyEwmaNanos(now + 60 * SECOND)).isLessThan(2.0 * MILLI);
+    }
+
+    @Test
+    void fastSampleAfterAnIdleSpellIsNotHeldBackByTheOldPeak() {
+        long now = 100 * SECOND;
+        instance.recordLatency(2 * SECOND, now);
+        instance.recordLatency(10 * MILLI, now + MILLI);
+        assertThat(instance.getLatencyEwmaNanos(now + MILLI)).isGreaterThan(1.0 * SECOND);
+
+        // without samples for a minute the old peak has decayed below the new sample
+        instance.recordLatency(10 * MILLI, now + 60 * SECOND);
+        assertThat(instance.getLatencyEwmaNanos(now + 60 * SECOND)).isEqualTo(10.0 * MILLI);
+    }
+}
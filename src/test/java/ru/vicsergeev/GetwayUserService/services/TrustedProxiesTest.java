@@ -0,0 +1,58 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import org.junit.jupiter.api.Test;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrustedProxiesTest {
+
+    @Test
+    void trustsNoOneByDefault() {
+        TrustedProxies trustedProxies = trustedProxies();
+
+        assertThat(trustedProxies.isTrusted("127.0.0.1")).isFalse();
+        assertThat(trustedProxies.isTrusted("10.0.0.1")).isFalse();
+    }
+
+    @Test
+    void matchesAddressesAndCidrs() {
+        TrustedProxies trustedProxies = trustedProxies("10.0.0.0/8", "192.168.1.16/28", "127.0.0.1", "fd00::/8");
+
+        assertThat(trustedProxies.isTrusted("10.200.3.4")).isTrue();
+        assertThat(trustedProxies.isTrusted("11.0.0.1")).isFalse();
+        assertThat(trustedProxies.isTrusted("192.168.1.31")).isTrue();
+        assertThat(trustedProxies.isTrusted("192.168.1.32")).isFalse();
+        assertThat(trustedProxies.isTrusted("127.0.0.1")).isTrue();
+        assertThat(trustedProxies.isTrusted("127.0.0.2")).isFalse();
+        assertThat(trustedProxies.isTrusted("fd12:3456::1")).isTrue();
+        assertThat(trustedProxies.isTrusted("fe80::1")).isFalse();
+        // IPv4 clients on a dual stack socket
+        assertThat(trustedProxies.isTrusted("::ffff:10.1.2.3")).isTrue();
+    }
+
+    @Test
+    void neverResolvesNames() {
+        TrustedProxies trustedProxies = trustedProxies("127.0.0.1");
+
+        assertThat(trustedProxies.isTrusted("localhost")).isFalse();
+        assertThat(trustedProxies.isTrusted("")).isFalse();
+        assertThat(trustedProxies.isTrusted(null)).isFalse();
+    }
+
+    @Test
+    void rejectsBadEntries() {
+        assertThatThrownBy(() -> trustedProxies("proxy.internal")).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> trustedProxies("10.0.0.0/33")).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> trustedProxies("10.0.0.0/x")).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static TrustedProxies trustedProxies(String... specs) {
+        ServicesProperties services = new ServicesProperties();
+        services.getTrustedProxies().addAll(List.of(specs));
+        return new TrustedProxies(services);
+    }
+}
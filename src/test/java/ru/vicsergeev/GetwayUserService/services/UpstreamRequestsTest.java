@@ -0,0 +1,88 @@
+package ru.vicsergeev.GetwayUserService.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamRequestsTest {
+
+    @Test
+    void copiesEndToEndHeadersOnly() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/1");
+        request.addHeader(HttpHeaders.ACCEPT, "application/json");
+        request.addHeader(HttpHeaders.CONNECTION, "keep-alive, X-Hop");
+        request.addHeader("X-Hop", "1");
+        request.addHeader("Keep-Alive", "timeout=5");
+        request.addHeader(HttpHeaders.HOST, "gateway:8085");
+        request.addHeader("X-Gateway-Priority", "high");
+        HttpHeaders headers = new HttpHeaders();
+
+        UpstreamRequests.copyHeaders(request, headers);
+
+        assertThat(headers.getFirst(HttpHeaders.ACCEPT)).isEqualTo("application/json");
+        assertThat(headers).doesNotContainKeys(HttpHeaders.CONNECTION, "X-Hop", "Keep-Alive", HttpHeaders.HOST,
+                "X-Gateway-Priority");
+    }
+
+    @Test
+    void replacesForwardedHeadersFromUntrustedPeers() {
+        MockHttpServletRequest request = spoofed();
+        HttpHeaders headers = new HttpHeaders();
+        UpstreamRequests.copyHeaders(request, headers);
+
+        UpstreamRequests.addForwarded(request, headers, "/api", false);
+
+        assertThat(headers.get("X-Forwarded-For")).containsExactly("203.0.113.7");
+        assertThat(headers.getFirst("X-Forwarded-Proto")).isEqualTo("http");
+        assertThat(headers.getFirst("X-Forwarded-Host")).isEqualTo("gateway:8085");
+        assertThat(headers.getFirst("X-Forwarded-Port")).isEqualTo("8085");
+        assertThat(headers.getFirst("X-Forwarded-Prefix")).isEqualTo("/api");
+        assertThat(headers.get("Forwarded")).containsExactly("for=203.0.113.7;proto=http;host=\"gateway:8085\"");
+    }
+
+    @Test
+    void extendsForwardedHeadersFromTrustedProxies() {
+        MockHttpServletRequest request = spoofed();
+        HttpHeaders headers = new HttpHeaders();
+        UpstreamRequests.copyHeaders(request, headers);
+
+        UpstreamRequests.addForwarded(request, headers, "/api", true);
+
+        assertThat(headers.get("X-Forwarded-For")).containsExactly("10.9.9.9, 203.0.113.7");
+        assertThat(headers.getFirst("X-Forwarded-Proto")).isEqualTo("https");
+        assertThat(headers.getFirst("X-Forwarded-Host")).isEqualTo("admin.internal");
+        assertThat(headers.getFirst("X-Forwarded-Port")).isEqualTo("443");
+        assertThat(headers.getFirst("X-Forwarded-Prefix")).isEqualTo("/admin");
+        assertThat(headers.getFirst("Forwarded")).startsWith("for=10.9.9.9, for=203.0.113.7;");
+    }
+
+    @Test
+    void removesForwardedHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        UpstreamRequests.copyHeaders(spoofed(), headers);
+
+        UpstreamRequests.removeForwarded(headers);
+
+        assertThat(headers).doesNotContainKeys("X-Forwarded-For", "X-Forwarded-Proto", "X-Forwarded-Host",
+                "X-Forwarded-Port", "X-Forwarded-Prefix", "Forwarded");
+        assertThat(headers.getFirst(HttpHeaders.ACCEPT)).isEqualTo("application/json");
+    }
+
+    // a plain http request from 203.0.113.7 claiming to come through an https proxy for 10.9.9.9
+    private static MockHttpServletRequest spoofed() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users/1");
+        request.setRemoteAddr("203.0.113.7");
+        request.setServerPort(8085);
+        request.addHeader(HttpHeaders.HOST, "gateway:8085");
+        request.addHeader(HttpHeaders.ACCEPT, "application/json");
+        request.addHeader("X-Forwarded-For", "10.9.9.9");
+        request.addHeader("X-Forwarded-Proto", "https");
+        request.addHeader("X-Forwarded-Host", "admin.internal");
+        request.addHeader("X-Forwarded-Port", "443");
+        request.addHeader("X-Forwarded-Prefix", "/admin");
+        request.addHeader("Forwarded", "for=10.9.9.9");
+        return request;
+    }
+}
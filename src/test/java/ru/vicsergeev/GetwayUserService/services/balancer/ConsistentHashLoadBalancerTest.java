@@ -0,0 +1,126 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.TaskScheduler;
+import ru.vicsergeev.GetwayUserService.config.LoadBalancerType;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.observability.UpstreamMetrics;
+import ru.vicsergeev.GetwayUserService.services.ServiceDiscoveryManager;
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+import ru.vicsergeev.GetwayUserService.services.discovery.DiscoverySource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConsistentHashLoadBalancerTest {
+    private static final int KEYS = 2000;
+
+    @Test
+    void sameKeySameInstanceSpreadEvenly() {
+        ServiceInstance[] instances = Instances.of("a", "b", "c", "d");
+        ConsistentHashLoadBalancer balancer = new ConsistentHashLoadBalancer(160, 0);
+
+        Map<String, Integer> perInstance = new HashMap<>();
+        for (int key = 0; key < KEYS; key++) {
+            ServiceInstance chosen = balancer.choose(instances, "user-" + key);
+            assertThat(balancer.choose(instances, "user-" + key)).isSameAs(chosen);
+            perInstance.merge(chosen.getUrl(), 1, Integer::sum);
+        }
+
+        assertThat(perInstance).hasSize(4);
+        assertThat(perInstance.values()).allSatisfy(count -> assertThat(count).isBetween(KEYS / 8, KEYS * 3 / 8));
+    }
+
+    @Test
+    void removingAnInstanceOnlyMovesItsOwnKeys() {
+        ServiceInstance[] instances = Instances.of("a", "b", "c", "d");
+        ServiceInstance[] withoutD = {instances[0], instances[1], instances[2]};
+        ConsistentHashLoadBalancer balancer = new ConsistentHashLoadBalancer(160, 0);
+
+        for (int key = 0; key < KEYS; key++) {
+            ServiceInstance before = balancer.choose(instances, "user-" + key);
+            ServiceInstance after = balancer.choose(withoutD, "user-" + key);
+            if (before != instances[3]) {
+                assertThat(after).isSameAs(before);
+            }
+        }
+    }
+
+    @Test
+    void aLoadedInstancePassesItsKeysToTheNextOne() {
+        ServiceInstance[] instances = Instances.of("a", "b", "c");
+        ConsistentHashLoadBalancer balancer = new ConsistentHashLoadBalancer(160, 1.25);
+        ServiceInstance owner = balancer.choose(instances, "hot");
+        for (int i = 0; i < 10; i++) {
+            owner.onRequestStart();
+        }
+
+        // 11 in flight with this request, capacity ceil(1.25 x 11 / 3) = 5
+        ServiceInstance spilled = balancer.choose(instances, "hot");
+
+        assertThat(spilled).isNotSameAs(owner);
+        assertThat(balancer.choose(instances, "hot")).isSameAs(spilled);
+        assertThat(new ConsistentHashLoadBalancer(160, 0).choose(instances, "hot")).isSameAs(owner);
+    }
+
+    @Test
+    void aRampingInstanceTakesAStableShareOfItsKeys() {
+        ServicesProperties services = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        user.setInstances(List.of("http://a:8081", "http://b:8081", "http://c:8081"));
+        user.setLoadBalancer(LoadBalancerType.CONSISTENT_HASH);
+        user.getHash().setLoadFactor(0);
+        // an hour long ramp, the new instance stays near its 10% floor for the test
+        user.getOutlier().setSlowStart(3_600_000);
+        services.getServices().put("user", user);
+        ServiceDiscoveryManager serviceDiscovery = serviceDiscovery(services);
+        Map<String, String> ownersBefore = new HashMap<>();
+        for (int key = 0; key < KEYS; key++) {
+            ownersBefore.put("user-" + key, serviceDiscovery.nextInstance("user", "user-" + key).getUrl());
+        }
+
+        serviceDiscovery.addInstance("user", "http://d:8081");
+
+        ServiceInstance[] all = Instances.of("a", "b", "c", "d");
+        ConsistentHashLoadBalancer full = new ConsistentHashLoadBalancer(160, 0);
+        int ringShare = 0;
+        int taken = 0;
+        for (int key = 0; key < KEYS; key++) {
+            String hashKey = "user-" + key;
+            String chosen = serviceDiscovery.nextInstance("user", hashKey).getUrl();
+            for (int i = 0; i < 5; i++) {
+                assertThat(serviceDiscovery.nextInstance("user", hashKey).getUrl()).isEqualTo(chosen);
+            }
+            if (full.choose(all, hashKey).getUrl().equals("http://d:8081")) {
+                ringShare++;
+            }
+            if (chosen.equals("http://d:8081")) {
+                taken++;
+            } else {
+                // keys the new instance passes on stay where they were
+                assertThat(chosen).isEqualTo(ownersBefore.get(hashKey));
+            }
+        }
+
+        assertThat(taken).isPositive();
+        assertThat(taken).isLessThan(ringShare / 4);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceDiscoveryManager serviceDiscovery(ServicesProperties services) {
+        ObjectProvider<DiscoverySource> sources = mock(ObjectProvider.class);
+        when(sources.orderedStream()).thenReturn(Stream.empty());
+        ServiceDiscoveryManager serviceDiscovery = new ServiceDiscoveryManager(services, sources,
+                mock(TaskScheduler.class), new UpstreamMetrics(new SimpleMeterRegistry()));
+        serviceDiscovery.init();
+        return serviceDiscovery;
+    }
+}
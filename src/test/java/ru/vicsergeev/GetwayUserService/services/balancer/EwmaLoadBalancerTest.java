@@ -0,0 +1,52 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import org.junit.jupiter.api.Test;
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EwmaLoadBalancerTest {
+    private static final long MILLI = 1_000_000L;
+
+    @Test
+    void slowerInstanceLosesAtEqualLoad() {
+        ServiceInstance[] instances = Instances.of("fast", "slow");
+        Instances.latency(instances[0], 10 * MILLI);
+        Instances.latency(instances[1], 100 * MILLI);
+        EwmaLoadBalancer balancer = new EwmaLoadBalancer();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(balancer.choose(instances)).isSameAs(instances[0]);
+        }
+    }
+
+    @Test
+    void fastInstanceLosesOnceItsQueueOutweighsTheLatencyGap() {
+        ServiceInstance[] instances = Instances.of("fast", "slow");
+        Instances.latency(instances[0], 10 * MILLI);
+        Instances.latency(instances[1], 30 * MILLI);
+        EwmaLoadBalancer balancer = new EwmaLoadBalancer();
+
+        // 10ms x (3 + 1) in flight against 30ms x (0 + 1)
+        Instances.inFlight(instances[0], 3);
+
+        assertThat(balancer.choose(instances)).isSameAs(instances[1]);
+    }
+
+    @Test
+    void oneSpikeIsForgottenAsFastSamplesComeIn() {
+        ServiceInstance[] instances = Instances.of("a", "b");
+        Instances.latency(instances[0], 20 * MILLI);
+        Instances.latency(instances[1], 20 * MILLI);
+        EwmaLoadBalancer balancer = new EwmaLoadBalancer();
+
+        Instances.latency(instances[0], 500 * MILLI);
+        assertThat(balancer.choose(instances)).isSameAs(instances[1]);
+
+        // 0.7^15 of the spike is left after fifteen samples
+        for (int i = 0; i < 15; i++) {
+            Instances.latency(instances[0], 10 * MILLI);
+        }
+        assertThat(balancer.choose(instances)).isSameAs(instances[0]);
+    }
+}
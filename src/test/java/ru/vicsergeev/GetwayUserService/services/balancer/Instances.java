@@ -0,0 +1,30 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+// test instances of the user service with set load
+final class Instances {
+
+    private Instances() {
+    }
+
+    static ServiceInstance[] of(String... names) {
+        ServiceInstance[] instances = new ServiceInstance[names.length];
+        for (int i = 0; i < names.length; i++) {
+            instances[i] = new ServiceInstance("user", "http://" + names[i] + ":8081");
+        }
+        return instances;
+    }
+
+    static void inFlight(ServiceInstance instance, int requests) {
+        for (int i = 0; i < requests; i++) {
+            instance.onRequestStart();
+        }
+    }
+
+    // one finished request that took latencyNanos
+    static void latency(ServiceInstance instance, long latencyNanos) {
+        instance.onRequestStart();
+        instance.onRequestEnd(latencyNanos);
+    }
+}
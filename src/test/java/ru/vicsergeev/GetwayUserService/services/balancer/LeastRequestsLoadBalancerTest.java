@@ -0,0 +1,51 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import org.junit.jupiter.api.Test;
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeastRequestsLoadBalancerTest {
+
+    @Test
+    void picksTheInstanceWithTheFewestInFlight() {
+        ServiceInstance[] instances = Instances.of("a", "b", "c");
+        Instances.inFlight(instances[0], 3);
+        Instances.inFlight(instances[1], 1);
+        Instances.inFlight(instances[2], 2);
+        LeastRequestsLoadBalancer balancer = new LeastRequestsLoadBalancer();
+
+        for (int i = 0; i < 6; i++) {
+            assertThat(balancer.choose(instances)).isSameAs(instances[1]);
+        }
+    }
+
+    @Test
+    void tiesRotateOverTheIdleInstances() {
+        ServiceInstance[] instances = Instances.of("a", "b", "c");
+        LeastRequestsLoadBalancer balancer = new LeastRequestsLoadBalancer();
+
+        Set<ServiceInstance> chosen = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            chosen.add(balancer.choose(instances));
+        }
+
+        assertThat(chosen).containsExactlyInAnyOrder(instances);
+    }
+
+    @Test
+    void loadFollowsTheRequests() {
+        ServiceInstance[] instances = Instances.of("a", "b");
+        LeastRequestsLoadBalancer balancer = new LeastRequestsLoadBalancer();
+
+        for (int i = 0; i < 10; i++) {
+            balancer.choose(instances).onRequestStart();
+        }
+
+        assertThat(instances[0].getInFlight()).isEqualTo(5);
+        assertThat(instances[1].getInFlight()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import org.junit.jupiter.api.Test;
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PowerOfTwoChoicesLoadBalancerTest {
+    private static final int PICKS = 3000;
+
+    @Test
+    void singleInstanceIsAlwaysChosen() {
+        ServiceInstance[] instances = Instances.of("a");
+
+        assertThat(new PowerOfTwoChoicesLoadBalancer().choose(instances)).isSameAs(instances[0]);
+    }
+
+    @Test
+    void mostLoadedInstanceIsNeverChosen() {
+        ServiceInstance[] instances = Instances.of("a", "b", "c", "d");
+        Instances.inFlight(instances[2], 5);
+        PowerOfTwoChoicesLoadBalancer balancer = new PowerOfTwoChoicesLoadBalancer();
+
+        // the two draws are distinct, so the loaded one always loses its comparison
+        for (int i = 0; i < PICKS; i++) {
+            assertThat(balancer.choose(instances)).isNotSameAs(instances[2]);
+        }
+    }
+
+    @Test
+    void idleInstancesShareEvenly() {
+        ServiceInstance[] instances = Instances.of("a", "b", "c");
+        PowerOfTwoChoicesLoadBalancer balancer = new PowerOfTwoChoicesLoadBalancer();
+
+        Map<ServiceInstance, Integer> perInstance = new HashMap<>();
+        for (int i = 0; i < PICKS; i++) {
+            perInstance.merge(balancer.choose(instances), 1, Integer::sum);
+        }
+
+        assertThat(perInstance).hasSize(3);
+        assertThat(perInstance.values()).allSatisfy(count -> assertThat(count).isBetween(PICKS / 4, PICKS / 2));
+    }
+}
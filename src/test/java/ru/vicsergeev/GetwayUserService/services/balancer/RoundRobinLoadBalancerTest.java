@@ -0,0 +1,42 @@
+package ru.vicsergeev.GetwayUserService.services.balancer;
+
+import org.junit.jupiter.api.Test;
+import ru.vicsergeev.GetwayUserService.services.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoundRobinLoadBalancerTest {
+
+    @Test
+    void cyclesThroughTheInstancesInOrder() {
+        ServiceInstance[] instances = Instances.of("a", "b", "c");
+        RoundRobinLoadBalancer balancer = new RoundRobinLoadBalancer();
+
+        List<ServiceInstance> chosen = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            chosen.add(balancer.choose(instances));
+        }
+
+        assertThat(chosen).containsExactly(instances[0], instances[1], instances[2],
+                instances[0], instances[1], instances[2]);
+    }
+
+    @Test
+    void ignoresLoadAndSurvivesASmallerSnapshot() {
+        ServiceInstance[] instances = Instances.of("a", "b", "c");
+        RoundRobinLoadBalancer balancer = new RoundRobinLoadBalancer();
+        for (int i = 0; i < 10; i++) {
+            instances[0].onRequestStart();
+        }
+
+        assertThat(balancer.choose(instances)).isSameAs(instances[0]);
+        assertThat(balancer.choose(instances)).isSameAs(instances[1]);
+        // an instance left, the counter keeps running over the new length
+        ServiceInstance[] withoutC = {instances[0], instances[1]};
+        assertThat(balancer.choose(withoutC)).isSameAs(instances[0]);
+        assertThat(balancer.choose(withoutC)).isSameAs(instances[1]);
+    }
+}
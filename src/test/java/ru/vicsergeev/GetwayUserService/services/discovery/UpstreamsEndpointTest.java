@@ -0,0 +1,72 @@
+package ru.vicsergeev.GetwayUserService.services.discovery;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.scheduling.TaskScheduler;
+import ru.vicsergeev.GetwayUserService.config.ServicesProperties;
+import ru.vicsergeev.GetwayUserService.observability.UpstreamMetrics;
+import ru.vicsergeev.GetwayUserService.services.ServiceDiscoveryManager;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UpstreamsEndpointTest {
+    private UpstreamsEndpoint endpoint;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ServicesProperties services = new ServicesProperties();
+        ServicesProperties.ServiceProps user = new ServicesProperties.ServiceProps();
+        user.setInstances(List.of("http://a:8081", "http://b:8081"));
+        services.getServices().put("user", user);
+        ObjectProvider<DiscoverySource> sources = mock(ObjectProvider.class);
+        when(sources.orderedStream()).thenReturn(Stream.empty());
+        ServiceDiscoveryManager serviceDiscovery = new ServiceDiscoveryManager(services, sources,
+                mock(TaskScheduler.class), new UpstreamMetrics(new SimpleMeterRegistry()));
+        serviceDiscovery.init();
+        endpoint = new UpstreamsEndpoint(services, serviceDiscovery);
+    }
+
+    @Test
+    void addsAndDrainsInstances() {
+        UpstreamsEndpoint.ChangeView added = endpoint.update("user", " http://c:8081/ ", "add");
+
+        assertThat(added.changed()).isTrue();
+        assertThat(added.instances()).extracting(UpstreamsEndpoint.InstanceView::url).contains("http://c:8081");
+        assertThat(endpoint.update("user", "http://c:8081", "drain").changed()).isTrue();
+        assertThat(endpoint.update("other", "http://c:8081", "add")).isNull();
+    }
+
+    @Test
+    void missingOrBlankArgumentsAreBadRequests() {
+        for (String url : new String[]{null, "", "  "}) {
+            assertThatThrownBy(() -> endpoint.update("user", url, "add"))
+                    .isInstanceOf(InvalidEndpointRequestException.class);
+            assertThatThrownBy(() -> endpoint.remove("user", url))
+                    .isInstanceOf(InvalidEndpointRequestException.class);
+        }
+        for (String action : new String[]{null, "", "  ", "remove"}) {
+            assertThatThrownBy(() -> endpoint.update("user", "http://c:8081", action))
+                    .isInstanceOf(InvalidEndpointRequestException.class);
+        }
+    }
+
+    @Test
+    void addRejectsWhatIsNotAnUpstreamUrl() {
+        for (String url : new String[]{"c:8081", "ftp://c:8081", "http://"}) {
+            assertThatThrownBy(() -> endpoint.update("user", url, "add"))
+                    .isInstanceOf(InvalidEndpointRequestException.class)
+                    .hasMessageContaining("http(s)");
+        }
+        assertThat(endpoint.service("user")).hasSize(2);
+    }
+}
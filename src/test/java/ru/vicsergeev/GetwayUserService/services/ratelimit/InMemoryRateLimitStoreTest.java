@@ -0,0 +1,154 @@
+package ru.vicsergeev.GetwayUserService.services.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryRateLimitStoreTest {
+    private static final long MILLI = 1_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+    // 10 requests a second, bursts of 3
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(100 * MILLI, 300 * MILLI, null);
+
+    private AtomicLong clock;
+    private InMemoryRateLimitStore store;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong(5 * SECOND);
+        store = new InMemoryRateLimitStore(1_000_000, clock::get);
+    }
+
+    @Test
+    void allowsTheBurstAtOnceThenTellsHowLongToWait() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(store.tryAcquire("route", "client", POLICY)).isZero();
+        }
+
+        assertThat(store.tryAcquire("route", "client", POLICY)).isEqualTo(100 * MILLI);
+
+        clock.addAndGet(40 * MILLI);
+        assertThat(store.tryAcquire("route", "client", POLICY)).isEqualTo(60 * MILLI);
+    }
+
+    @Test
+    void steadyRateIsOneRequestPerInterval() {
+        for (int i = 0; i < 3; i++) {
+            store.tryAcquire("route", "client", POLICY);
+        }
+
+        // once the burst is spent a request is let through every interval and never more often
+        for (int i = 0; i < 20; i++) {
+            clock.addAndGet(100 * MILLI);
+            assertThat(store.tryAcquire("route", "client", POLICY)).isZero();
+            assertThat(store.tryAcquire("route", "client", POLICY)).isEqualTo(100 * MILLI);
+        }
+    }
+
+    @Test
+    void bucketRefillsWithIdleTimeUpToTheBurst() {
+        for (int i = 0; i < 3; i++) {
+            store.tryAcquire("route", "client", POLICY);
+        }
+
+        clock.addAndGet(200 * MILLI);
+        assertThat(store.tryAcquire("route", "client", POLICY)).isZero();
+        assertThat(store.tryAcquire("route", "client", POLICY)).isZero();
+        assertThat(store.tryAcquire("route", "client", POLICY)).isPositive();
+
+        // a long pause refills no more than the burst
+        clock.addAndGet(10 * SECOND);
+        for (int i = 0; i < 3; i++) {
+            assertThat(store.tryAcquire("route", "client", POLICY)).isZero();
+        }
+        assertThat(store.tryAcquire("route", "client", POLICY)).isPositive();
+    }
+
+    @Test
+    void keysAndScopesHaveTheirOwnBuckets() {
+        for (int i = 0; i < 3; i++) {
+            store.tryAcquire("route", "a", POLICY);
+        }
+        assertThat(store.tryAcquire("route", "a", POLICY)).isPositive();
+
+        assertThat(store.tryAcquire("route", "b", POLICY)).isZero();
+        assertThat(store.tryAcquire("other-route", "a", POLICY)).isZero();
+    }
+
+    @Test
+    void sweepDropsOnlyRefilledBuckets() {
+        store.tryAcquire("route", "idle", POLICY);
+        clock.addAndGet(150 * MILLI);
+        store.tryAcquire("route", "busy", POLICY);
+        assertThat(store.size()).isEqualTo(2);
+
+        store.sweep();
+
+        assertThat(store.size()).isEqualTo(1);
+        // the swept key starts over with a full bucket
+        for (int i = 0; i < 3; i++) {
+            assertThat(store.tryAcquire("route", "idle", POLICY)).isZero();
+        }
+    }
+
+    @Test
+    void fullStoreRejectsNewKeysButKeepsLimitingKnownOnes() {
+        // one key per shard, spread over the 64 shards some new keys must find theirs taken
+        store = new InMemoryRateLimitStore(64, clock::get);
+        List<String> admitted = new ArrayList<>();
+        long rejected = 0;
+        for (int i = 0; i < 500; i++) {
+            String key = "client-" + i;
+            long wait = store.tryAcquire("route", key, POLICY);
+            if (wait == 0) {
+                admitted.add(key);
+            } else {
+                assertThat(wait).isGreaterThanOrEqualTo(POLICY.intervalNanos());
+                rejected++;
+            }
+        }
+
+        assertThat(rejected).isPositive();
+        assertThat(store.overflows()).isEqualTo(rejected);
+        assertThat(store.size()).isEqualTo(admitted.size());
+        assertThat(store.tryAcquire("route", admitted.get(0), POLICY)).isZero();
+        assertThat(store.tryAcquire("route", admitted.get(0), POLICY)).isZero();
+        assertThat(store.tryAcquire("route", admitted.get(0), POLICY)).isPositive();
+
+        // once the admitted buckets have refilled the next new key sweeps its shard and gets in
+        clock.addAndGet(2 * SECOND);
+        for (int i = 500; i < 1000; i++) {
+            assertThat(store.tryAcquire("route", "client-" + i, POLICY)).isZero();
+            clock.addAndGet(SECOND);
+        }
+    }
+
+    @Test
+    void keyBudgetIsSharedByAllScopes() {
+        store = new InMemoryRateLimitStore(64, clock::get);
+        long rejected = 0;
+        for (int i = 0; i < 500; i++) {
+            for (String scope : List.of("users", "notifications")) {
+                if (store.tryAcquire(scope, "client-" + i, POLICY) > 0) {
+                    rejected++;
+                }
+            }
+        }
+
+        // each route alone could fill 64 keys, together they still hold no more than that
+        assertThat(store.size()).isLessThanOrEqualTo(64);
+        assertThat(store.overflows()).isEqualTo(rejected);
+
+        // sweeping the idle keys frees the shared budget for either route
+        clock.addAndGet(2 * SECOND);
+        store.sweep();
+        assertThat(store.size()).isZero();
+        assertThat(store.tryAcquire("notifications", "client-0", POLICY)).isZero();
+        assertThat(store.size()).isEqualTo(1);
+    }
+}